@@ -0,0 +1,99 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Benchmark files
+ * Temporary test data shared by the benchmarks.
+ */
+class BenchmarkFiles {
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * Create temporary directory
+     *
+     * @return Directory
+     * @throws IOException IO error
+     */
+    static File createDirectory() throws IOException {
+        return Files.createTempDirectory("filesdownloader-bench").toFile();
+    }
+
+    /**
+     * Write file with content that compresses roughly like application assets
+     *
+     * @param file Target file
+     * @param size File size in bytes
+     * @throws IOException IO error
+     */
+    static void write(File file, long size) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            byte[] chunk = getContent((int) Math.min(CHUNK_SIZE, size), size);
+            long remaining = size;
+            while (remaining > 0) {
+                int count = (int) Math.min(chunk.length, remaining);
+                out.write(chunk, 0, count);
+                remaining -= count;
+            }
+        }
+    }
+
+    /**
+     * Get content half random, half repeated text
+     *
+     * @param size Content size
+     * @param seed Random seed
+     * @return Content
+     */
+    static byte[] getContent(int size, long seed) {
+        byte[] content = new byte[size];
+        new Random(seed).nextBytes(content);
+
+        byte[] text = "cordova-plugin-files-downloader ".getBytes();
+        for (int i = 0; i < size / 2; i++) {
+            content[i] = text[i % text.length];
+        }
+
+        return content;
+    }
+
+    /**
+     * Delete directory with its content
+     *
+     * @param file File or directory
+     */
+    static void delete(File file) {
+        File[] children = file.listFiles();
+        if (null != children) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+
+        file.delete();
+    }
+}
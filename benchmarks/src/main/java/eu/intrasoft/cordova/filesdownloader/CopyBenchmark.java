@@ -0,0 +1,84 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Copy benchmark
+ * Finalization of downloaded files: Utils.copyFile (across volumes) and Utils.moveFile
+ * (rename on the same volume), for file sizes from KB to GB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CopyBenchmark {
+    @Param({"4096", "1048576", "67108864", "1073741824"})
+    public long size;
+
+    private File directory;
+    private File source;
+    private File target;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.directory = BenchmarkFiles.createDirectory();
+        this.source = new File(this.directory, "source.bin");
+        this.target = new File(this.directory, "target.bin");
+        BenchmarkFiles.write(this.source, this.size);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkFiles.delete(this.directory);
+    }
+
+    @Benchmark
+    public void copyFile(ByteCounter counter) throws IOException {
+        Utils.copyFile(this.source, this.target);
+        counter.bytes += this.size;
+    }
+
+    @Benchmark
+    public void moveFile(ByteCounter counter) throws IOException {
+        Utils.moveFile(this.source, this.target);
+        Utils.moveFile(this.target, this.source);
+        counter.bytes += this.size;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Download progress benchmark
+ * DownloadItemInfo.getDownloadProgress for a spread of download states, as polled by the monitor.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DownloadProgressBenchmark {
+    private static final int INFOS = 1024;
+
+    private final DownloadItemInfo[] infos = new DownloadItemInfo[INFOS];
+    private int index = 0;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < INFOS; i++) {
+            DownloadItemInfo info = new DownloadItemInfo(i, "https://example.com/file-" + i);
+            // Unknown size, empty, partial and complete downloads from KB to GB
+            long total = i % 8 == 0 ? -1 : 1024L << (i % 21);
+            info.setBytesTotal(total);
+            info.setBytesDownloaded(total > 0 ? total * (i % 101) / 100 : i);
+            this.infos[i] = info;
+        }
+    }
+
+    @Benchmark
+    public int getDownloadProgress() {
+        this.index = (this.index + 1) & (INFOS - 1);
+
+        return this.infos[this.index].getDownloadProgress();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Extract benchmark
+ * Utils.extractZip for archives with few large or many tiny entries, by number of threads,
+ * with full and incremental (everything already in place) extraction.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtractBenchmark {
+    private static final String ARCHIVE_NAME = "bench.zip";
+
+    /**
+     * Archive layout: number of entries x entry size
+     */
+    @Param({"4x16777216", "10000x1024"})
+    public String layout;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    @Param({"false", "true"})
+    public boolean incremental;
+
+    private File directory;
+    private File manifestFile;
+    private long size;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        int entries = Integer.parseInt(this.layout.substring(0, this.layout.indexOf('x')));
+        int entrySize = Integer.parseInt(this.layout.substring(this.layout.indexOf('x') + 1));
+
+        this.directory = BenchmarkFiles.createDirectory();
+        this.manifestFile = this.incremental ? ZipManifest.getFile(new File(this.directory, ARCHIVE_NAME)) : null;
+        this.size = (long) entries * entrySize;
+
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(new File(this.directory, ARCHIVE_NAME)))) {
+            for (int i = 0; i < entries; i++) {
+                zip.putNextEntry(new ZipEntry("assets/" + (i % 100) + "/entry-" + i + ".bin"));
+                zip.write(BenchmarkFiles.getContent(entrySize, i));
+                zip.closeEntry();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkFiles.delete(this.directory);
+    }
+
+    @Benchmark
+    public boolean extractZip(ByteCounter counter) {
+        boolean result = Utils.extractZip(
+                this.directory.getPath(),
+                ARCHIVE_NAME,
+                this.threads,
+                this.manifestFile,
+                null,
+                null
+        );
+        counter.bytes += this.size;
+
+        return result;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cordova.CallbackContext;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Result JSON benchmark
+ * Building and serializing progress results, and sending them through the throttle.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResultJsonBenchmark {
+    @Param({Utils.STATUS_NEW, Utils.STATUS_DOWNLOADING, Utils.STATUS_EXTRACTING})
+    public String status;
+
+    private DownloadItem item;
+    private int progress = 0;
+
+    @Setup
+    public void setUp() {
+        this.item = new DownloadItem(
+                "https://example.com/packs/assets.zip",
+                "file:///data/user/0/app/files/assets.zip",
+                new CallbackContext()
+        );
+        this.item.setId(42);
+
+        if (!Utils.STATUS_NEW.equals(this.status)) {
+            this.item.getDownloadStats().update(0, 536870912);
+            this.item.getDownloadStats().update(268435456, 536870912);
+        }
+        if (Utils.STATUS_EXTRACTING.equals(this.status)) {
+            this.item.getExtractStats().update(0, 1073741824);
+            this.item.getExtractStats().update(104857600, 1073741824);
+            this.item.getExtractStats().updateEntries(1200, 10000);
+        }
+    }
+
+    @Benchmark
+    public JSONObject getResultJSON() throws JSONException {
+        return Utils.getResultJSON(this.item, this.status, 50);
+    }
+
+    @Benchmark
+    public String getResultJSONString() throws JSONException {
+        return Utils.getResultJSON(this.item, this.status, 50).toString();
+    }
+
+    /**
+     * Every call changes progress, so the throttle decides by interval and step
+     */
+    @Benchmark
+    public void sendResult() {
+        this.progress = (this.progress + 1) % 100;
+        this.item.sendResult(this.status, this.progress);
+    }
+}
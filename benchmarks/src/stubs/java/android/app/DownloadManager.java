@@ -0,0 +1,68 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package android.app;
+
+import android.database.Cursor;
+import android.net.Uri;
+
+/**
+ * DownloadManager
+ * JVM stub with the members used by the plugin, for benchmarks only.
+ */
+public class DownloadManager {
+    public static final String COLUMN_ID = "_id";
+    public static final String COLUMN_URI = "uri";
+    public static final String COLUMN_STATUS = "status";
+    public static final String COLUMN_REASON = "reason";
+    public static final String COLUMN_BYTES_DOWNLOADED_SO_FAR = "bytes_so_far";
+    public static final String COLUMN_TOTAL_SIZE_BYTES = "total_size";
+
+    public static final int STATUS_PENDING = 1;
+    public static final int STATUS_RUNNING = 2;
+    public static final int STATUS_PAUSED = 4;
+    public static final int STATUS_SUCCESSFUL = 8;
+    public static final int STATUS_FAILED = 16;
+
+    public Cursor query(Query query) {
+        return null;
+    }
+
+    public static class Query {
+        public Query setFilterById(long... ids) {
+            return this;
+        }
+    }
+
+    public static class Request {
+        public Request(Uri uri) {
+        }
+
+        public Request setTitle(CharSequence title) {
+            return this;
+        }
+
+        public void setVisibleInDownloadsUi(boolean visible) {
+        }
+
+        public Request setDestinationUri(Uri uri) {
+            return this;
+        }
+    }
+}
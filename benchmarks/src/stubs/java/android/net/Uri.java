@@ -0,0 +1,57 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package android.net;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
+
+/**
+ * Uri
+ * JVM stub backed by java.net.URI, for benchmarks only.
+ */
+public class Uri {
+    private final String uri;
+
+    private Uri(String uri) {
+        this.uri = uri;
+    }
+
+    public static Uri parse(String uri) {
+        return new Uri(uri);
+    }
+
+    public static Uri fromFile(File file) {
+        return new Uri(file.toURI().toString());
+    }
+
+    public String getPath() {
+        try {
+            return new URI(this.uri).getPath();
+        } catch (URISyntaxException e) {
+            return this.uri;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.uri;
+    }
+}
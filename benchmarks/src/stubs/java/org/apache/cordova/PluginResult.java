@@ -0,0 +1,64 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package org.apache.cordova;
+
+import org.json.JSONObject;
+
+/**
+ * PluginResult
+ * JVM stub serializing the message like the Cordova bridge does, for benchmarks only.
+ */
+public class PluginResult {
+    public enum Status {
+        OK,
+        ERROR,
+        JSON_EXCEPTION
+    }
+
+    private final Status status;
+    private final String message;
+    private boolean keepCallback = false;
+
+    public PluginResult(Status status) {
+        this.status = status;
+        this.message = null;
+    }
+
+    public PluginResult(Status status, JSONObject message) {
+        this.status = status;
+        this.message = message.toString();
+    }
+
+    public void setKeepCallback(boolean keepCallback) {
+        this.keepCallback = keepCallback;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public boolean getKeepCallback() {
+        return keepCallback;
+    }
+}
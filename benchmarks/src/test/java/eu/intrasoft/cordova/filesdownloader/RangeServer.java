@@ -0,0 +1,162 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Range server
+ * Local HTTP server for one file with range and If-Range support, recording the served ranges.
+ */
+class RangeServer implements Closeable {
+    private final HttpServer server;
+    private final List<long[]> ranges = Collections.synchronizedList(new ArrayList<long[]>());
+    private volatile byte[] content;
+    private volatile String etag;
+    private volatile long rangeShift = 0;
+    private volatile Runnable afterRequest;
+
+    RangeServer(byte[] content, String etag) throws IOException {
+        this.content = content;
+        this.etag = etag;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    String getUrl() {
+        return "http://127.0.0.1:" + this.server.getAddress().getPort() + "/file";
+    }
+
+    /**
+     * Replace served file
+     *
+     * @param content File content
+     * @param etag Strong ETag of the content
+     */
+    void setContent(byte[] content, String etag) {
+        this.content = content;
+        this.etag = etag;
+    }
+
+    /**
+     * Serve ranges moved by given number of bytes, as a misbehaving server would
+     *
+     * @param rangeShift Bytes
+     */
+    void setRangeShift(long rangeShift) {
+        this.rangeShift = rangeShift;
+    }
+
+    /**
+     * Run given action after each response
+     *
+     * @param afterRequest Action
+     */
+    void setAfterRequest(Runnable afterRequest) {
+        this.afterRequest = afterRequest;
+    }
+
+    /**
+     * Get ranges served with 206, first and last byte
+     *
+     * @return Ranges
+     */
+    List<long[]> getRanges() {
+        synchronized (this.ranges) {
+            return new ArrayList<long[]>(this.ranges);
+        }
+    }
+
+    /**
+     * Get number of bytes served with 206
+     *
+     * @return Bytes
+     */
+    long getRangeBytes() {
+        long bytes = 0;
+        for (long[] range : this.getRanges()) {
+            bytes += range[1] - range[0] + 1;
+        }
+
+        return bytes;
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] content = this.content;
+        String etag = this.etag;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+
+        try {
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+
+            if (null != range && range.startsWith("bytes=") && (null == ifRange || ifRange.equals(etag))) {
+                String[] bounds = range.substring(6).split("-", 2);
+                long start;
+                long end;
+                if (bounds[0].isEmpty()) {
+                    start = Math.max(0, content.length - Long.parseLong(bounds[1]));
+                    end = content.length - 1;
+                } else {
+                    start = Long.parseLong(bounds[0]);
+                    end = bounds[1].isEmpty() ? content.length - 1 : Math.min(Long.parseLong(bounds[1]), content.length - 1);
+                }
+
+                start = Math.min(start + this.rangeShift, end);
+                this.ranges.add(new long[]{start, end});
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+                this.send(exchange, 206, content, (int) start, (int) (end - start + 1));
+            } else {
+                this.send(exchange, 200, content, 0, content.length);
+            }
+        } finally {
+            exchange.close();
+        }
+
+        Runnable afterRequest = this.afterRequest;
+        if (null != afterRequest) {
+            afterRequest.run();
+        }
+    }
+
+    private void send(HttpExchange exchange, int code, byte[] content, int offset, int length) throws IOException {
+        exchange.sendResponseHeaders(code, length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(content, offset, length);
+        }
+    }
+}
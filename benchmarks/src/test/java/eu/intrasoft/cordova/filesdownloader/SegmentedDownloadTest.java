@@ -0,0 +1,105 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Segmented download test
+ * Runs segmented downloads against a local range server.
+ */
+public class SegmentedDownloadTest {
+    private static final String ETAG = "\"v1\"";
+    private static final int SEGMENTS = 4;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private byte[] content;
+    private RangeServer server;
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        this.content = new byte[1024 * 1024 + 123];
+        new Random(42).nextBytes(this.content);
+        this.server = new RangeServer(this.content, ETAG);
+        this.file = new File(this.folder.getRoot(), "file.download");
+    }
+
+    @After
+    public void tearDown() {
+        this.server.close();
+    }
+
+    @Test
+    public void writesSegmentsAtTheirOffsets() throws Exception {
+        AtomicLong processed = new AtomicLong();
+
+        this.newDownload(processed).run();
+
+        assertArrayEquals(this.content, Files.readAllBytes(this.file.toPath()));
+        assertEquals(SEGMENTS, this.server.getRanges().size());
+        assertEquals(this.content.length, this.server.getRangeBytes());
+        assertEquals(this.content.length, processed.get());
+    }
+
+    @Test
+    public void failsOnOtherRange() throws Exception {
+        this.server.setRangeShift(1);
+
+        this.assertFailsWith(106);
+    }
+
+    @Test
+    public void failsOnChangedFile() throws Exception {
+        this.server.setContent(this.content, "\"v2\"");
+
+        this.assertFailsWith(106);
+        assertEquals(0, this.server.getRanges().size());
+    }
+
+    private SegmentedDownload newDownload(AtomicLong processed) {
+        return new SegmentedDownload(this.server.getUrl(), this.file, this.content.length, ETAG, SEGMENTS, 8192,
+                (bytes, total) -> processed.accumulateAndGet(bytes, Math::max));
+    }
+
+    private void assertFailsWith(int code) throws Exception {
+        try {
+            this.newDownload(new AtomicLong()).run();
+            fail("Download did not fail.");
+        } catch (DownloadException e) {
+            assertEquals(code, e.getCode());
+        }
+    }
+}
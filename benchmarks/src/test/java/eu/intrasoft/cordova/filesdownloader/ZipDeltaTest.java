@@ -0,0 +1,227 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * ZIP delta test
+ * Updates an extracted archive from a local range server.
+ */
+public class ZipDeltaTest {
+    private static final int LARGE_SIZE = 512 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private byte[] large;
+    private File dir;
+    private File manifestFile;
+    private RangeServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        this.large = new byte[LARGE_SIZE];
+        new Random(42).nextBytes(this.large);
+        this.dir = this.folder.getRoot();
+        this.manifestFile = ZipManifest.getFile(new File(this.dir, "archive.zip"));
+
+        // Previous version, extracted by a first update into the empty directory
+        this.server = new RangeServer(this.getArchive(false, "old content", "removed"), "\"v1\"");
+        assertTrue(this.newDelta().run());
+        assertEquals("old content", this.read("changed.txt"));
+        assertEquals("removed", this.read("removed.txt"));
+        this.server.close();
+    }
+
+    @After
+    public void tearDown() {
+        this.server.close();
+    }
+
+    @Test
+    public void fetchesOnlyChangedEntries() throws Exception {
+        byte[] archive = this.getArchive(true, "new content", null);
+        this.server = new RangeServer(archive, "\"v2\"");
+        long modified = new File(this.dir, "large.bin").lastModified();
+
+        assertTrue(this.newDelta().run());
+
+        // Unchanged entry at the start of the archive is not fetched, apart from the one byte probe and the tail
+        // holding the central directory
+        for (long[] range : this.server.getRanges()) {
+            if ((range[0] == 0 && range[1] == 0) || range[1] == archive.length - 1) {
+                continue;
+            }
+            assertTrue("Range " + range[0] + "-" + range[1] + " overlaps unchanged entry", range[0] > LARGE_SIZE);
+        }
+        assertTrue(this.server.getRangeBytes() < LARGE_SIZE);
+        assertEquals(modified, new File(this.dir, "large.bin").lastModified());
+        assertArrayEquals(this.large, Files.readAllBytes(new File(this.dir, "large.bin").toPath()));
+
+        assertEquals("new content", this.read("changed.txt"));
+        assertEquals("added", this.read("sub/added.txt"));
+        assertEquals("kept", this.read("kept.txt"));
+        assertFalse(new File(this.dir, "removed.txt").exists());
+
+        ZipManifest manifest = ZipManifest.load(this.manifestFile);
+        assertEquals(null, manifest.get("removed.txt"));
+        assertEquals(crc("new content"), manifest.get("changed.txt").crc);
+    }
+
+    @Test
+    public void keepsPreviousFilesOnCrcMismatch() throws Exception {
+        byte[] archive = this.getArchive(true, "new content", null);
+        int position = indexOf(archive, "new content".getBytes(StandardCharsets.UTF_8));
+        archive[position] ^= 1;
+        this.server = new RangeServer(archive, "\"v2\"");
+
+        try {
+            this.newDelta().run();
+            fail("Update did not fail.");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("CRC mismatch"));
+        }
+
+        assertEquals("old content", this.read("changed.txt"));
+        assertEquals("removed", this.read("removed.txt"));
+        assertFalse(new File(this.dir, "changed.txt.download").exists());
+        assertEquals(crc("old content"), ZipManifest.load(this.manifestFile).get("changed.txt").crc);
+    }
+
+    @Test
+    public void failsWhenArchiveChangesAfterProbe() throws Exception {
+        this.server = new RangeServer(this.getArchive(true, "new content", null), "\"v2\"");
+        // If-Range of the following requests does not match anymore
+        this.server.setAfterRequest(() -> this.server.setContent(this.getArchiveUnchecked(), "\"v3\""));
+
+        try {
+            this.newDelta().run();
+            fail("Update did not fail.");
+        } catch (DownloadException e) {
+            assertEquals(106, e.getCode());
+        }
+
+        assertEquals("old content", this.read("changed.txt"));
+        assertEquals("removed", this.read("removed.txt"));
+    }
+
+    private ZipDelta newDelta() {
+        return new ZipDelta(this.server.getUrl(), this.dir, this.manifestFile, 8192, (processed, total, entries, entriesTotal) -> {
+        });
+    }
+
+    private byte[] getArchiveUnchecked() {
+        try {
+            return this.getArchive(true, "newer content", null);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Build test archive: a large stored entry first, then small entries
+     *
+     * @param added Include sub/added.txt
+     * @param changed Content of changed.txt, stored so it can be found in the archive
+     * @param removed Content of removed.txt or null to leave it out
+     * @return Archive
+     * @throws IOException IO error
+     */
+    private byte[] getArchive(boolean added, String changed, String removed) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+        entries.put("large.bin", this.large);
+        entries.put("kept.txt", "kept".getBytes(StandardCharsets.UTF_8));
+        entries.put("changed.txt", changed.getBytes(StandardCharsets.UTF_8));
+        if (null != removed) {
+            entries.put("removed.txt", removed.getBytes(StandardCharsets.UTF_8));
+        }
+        if (added) {
+            entries.put("sub/added.txt", "added".getBytes(StandardCharsets.UTF_8));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            for (Map.Entry<String, byte[]> item : entries.entrySet()) {
+                ZipEntry entry = new ZipEntry(item.getKey());
+                if (!item.getKey().equals("kept.txt")) {
+                    CRC32 crc = new CRC32();
+                    crc.update(item.getValue());
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(item.getValue().length);
+                    entry.setCrc(crc.getValue());
+                }
+
+                out.putNextEntry(entry);
+                out.write(item.getValue());
+                out.closeEntry();
+            }
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private String read(String name) throws IOException {
+        return new String(Files.readAllBytes(new File(this.dir, name).toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static long crc(String content) {
+        CRC32 crc = new CRC32();
+        crc.update(content.getBytes(StandardCharsets.UTF_8));
+
+        return crc.getValue();
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        for (int i = 0; i <= data.length - pattern.length; i++) {
+            int j = 0;
+            while (j < pattern.length && data[i + j] == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return i;
+            }
+        }
+
+        throw new IllegalArgumentException("Pattern not found.");
+    }
+}
@@ -0,0 +1,373 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Content cache
+ * Local copies of downloaded files, limited in size and evicted by last use.
+ * The index is loaded on first use, files are copied outside the lock.
+ */
+class ContentCache {
+    private static final String PREFERENCES_NAME = "eu.intrasoft.cordova.filesdownloader.cache";
+    private static final String DIRECTORY_NAME = "eu.intrasoft.cordova.filesdownloader";
+    static final long DEFAULT_MAX_SIZE = 100L * 1024 * 1024;
+
+    private final SharedPreferences preferences;
+    private final File directory;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private boolean loaded = false;
+    private long size = 0;
+    private long maxSize = DEFAULT_MAX_SIZE;
+
+    ContentCache(Context context) {
+        this.preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        this.directory = new File(context.getCacheDir(), DIRECTORY_NAME);
+    }
+
+    /**
+     * Set cache size budget, least recently used files are evicted to fit in
+     *
+     * @param maxSize Max size in bytes, 0 disables the cache
+     */
+    public synchronized void setMaxSize(long maxSize) {
+        this.load();
+        this.maxSize = Math.max(0, maxSize);
+        this.evict();
+    }
+
+    /**
+     * Check if there is a cached copy for given URL
+     *
+     * @param remoteUrl Remote URL
+     * @return True if cached
+     */
+    public synchronized boolean contains(String remoteUrl) {
+        this.load();
+        Entry entry = this.entries.get(remoteUrl);
+
+        return null != entry && this.getFile(entry).exists();
+    }
+
+    /**
+     * Get validator of the cached copy for given URL
+     *
+     * @param remoteUrl Remote URL
+     * @return ETag or Last-Modified value, null if unknown or not cached
+     */
+    public synchronized String getValidator(String remoteUrl) {
+        this.load();
+        Entry entry = this.entries.get(remoteUrl);
+
+        return null != entry ? entry.validator : null;
+    }
+
+    /**
+     * Copy cached file for given URL to target file.
+     * The file is opened under the lock, so a concurrent removal does not affect the copy.
+     *
+     * @param remoteUrl Remote URL
+     * @param target Target file
+     * @return False if there is no cached copy
+     * @throws IOException IO error
+     */
+    public boolean restore(String remoteUrl, File target) throws IOException {
+        FileInputStream in;
+
+        synchronized (this) {
+            this.load();
+            Entry entry = this.entries.get(remoteUrl);
+            if (null == entry) {
+                return false;
+            }
+
+            File file = this.getFile(entry);
+            if (!file.exists()) {
+                this.remove(remoteUrl);
+                return false;
+            }
+
+            in = new FileInputStream(file);
+            entry.accessed = System.currentTimeMillis();
+            this.save(remoteUrl, entry);
+        }
+
+        try {
+            Utils.copyFile(in.getChannel(), target);
+        } finally {
+            in.close();
+        }
+
+        return true;
+    }
+
+    /**
+     * Store downloaded file for given URL
+     *
+     * @param remoteUrl Remote URL
+     * @param validator ETag or Last-Modified value of the file, null if unknown
+     * @param source Downloaded file
+     * @param move If true, source file is moved into the cache instead of copied
+     * @throws IOException IO error
+     */
+    public void store(String remoteUrl, String validator, File source, boolean move) throws IOException {
+        long length = source.length();
+        Entry entry = new Entry(getFileName(remoteUrl), validator, length, System.currentTimeMillis());
+
+        synchronized (this) {
+            this.load();
+            if (length > this.maxSize) {
+                return;
+            }
+
+            if (!this.directory.exists() && !this.directory.mkdirs()) {
+                throw new IOException("Could not create cache directory.");
+            }
+        }
+
+        // Unique name, stores of the same URL may run at once
+        File temporaryFile = File.createTempFile(entry.fileName, ".tmp", this.directory);
+        try {
+            if (move) {
+                Utils.moveFile(source, temporaryFile);
+            } else {
+                Utils.copyFile(source, temporaryFile);
+            }
+        } catch (IOException e) {
+            temporaryFile.delete();
+            throw e;
+        }
+
+        synchronized (this) {
+            this.remove(remoteUrl);
+
+            if (!temporaryFile.renameTo(this.getFile(entry))) {
+                temporaryFile.delete();
+                throw new IOException("Could not store file in cache.");
+            }
+
+            this.entries.put(remoteUrl, entry);
+            this.size += length;
+            this.save(remoteUrl, entry);
+            this.evict();
+        }
+    }
+
+    /**
+     * Remove cached copy for given URL
+     *
+     * @param remoteUrl Remote URL
+     * @return False if there was no cached copy
+     */
+    public synchronized boolean remove(String remoteUrl) {
+        this.load();
+        Entry entry = this.entries.remove(remoteUrl);
+        if (null == entry) {
+            return false;
+        }
+
+        this.size -= entry.size;
+        this.getFile(entry).delete();
+        this.preferences.edit().remove(remoteUrl).apply();
+
+        return true;
+    }
+
+    /**
+     * Remove all cached copies
+     */
+    public synchronized void clear() {
+        this.load();
+        for (Entry entry : this.entries.values()) {
+            this.getFile(entry).delete();
+        }
+
+        this.entries.clear();
+        this.size = 0;
+        this.preferences.edit().clear().apply();
+    }
+
+    /**
+     * Get cache contents, least recently used first
+     *
+     * @return JSON object
+     * @throws JSONException JSON error
+     */
+    public synchronized JSONObject toJSON() throws JSONException {
+        this.load();
+        JSONArray list = new JSONArray();
+
+        for (Map.Entry<String, Entry> item : this.entries.entrySet()) {
+            JSONObject obj = new JSONObject();
+            obj.put("url", item.getKey());
+            obj.put("size", item.getValue().size);
+            obj.put("validator", item.getValue().validator);
+            obj.put("accessed", item.getValue().accessed);
+            list.put(obj);
+        }
+
+        JSONObject obj = new JSONObject();
+        obj.put("size", this.size);
+        obj.put("maxSize", this.maxSize);
+        obj.put("entries", list);
+
+        return obj;
+    }
+
+    /**
+     * Remove least recently used files until the cache fits in its budget
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> iterator = this.entries.entrySet().iterator();
+        SharedPreferences.Editor editor = this.preferences.edit();
+
+        while (this.size > this.maxSize && iterator.hasNext()) {
+            Map.Entry<String, Entry> item = iterator.next();
+
+            this.size -= item.getValue().size;
+            this.getFile(item.getValue()).delete();
+            editor.remove(item.getKey());
+            iterator.remove();
+        }
+
+        editor.apply();
+    }
+
+    /**
+     * Load persisted entries in order of last use once, dropping entries without file
+     */
+    private void load() {
+        if (this.loaded) {
+            return;
+        }
+        this.loaded = true;
+
+        List<Map.Entry<String, Entry>> loaded = new ArrayList<Map.Entry<String, Entry>>();
+        SharedPreferences.Editor editor = this.preferences.edit();
+
+        for (Map.Entry<String, ?> item : this.preferences.getAll().entrySet()) {
+            try {
+                JSONObject obj = new JSONObject(String.valueOf(item.getValue()));
+                Entry entry = new Entry(
+                        obj.getString("file"),
+                        obj.has("validator") ? obj.getString("validator") : null,
+                        obj.getLong("size"),
+                        obj.getLong("accessed")
+                );
+
+                if (this.getFile(entry).length() == entry.size) {
+                    loaded.add(new AbstractMap.SimpleEntry<String, Entry>(item.getKey(), entry));
+                    continue;
+                }
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+
+            editor.remove(item.getKey());
+        }
+
+        editor.apply();
+
+        // Copies interrupted before they were stored
+        File[] files = this.directory.listFiles();
+        if (null != files) {
+            for (File file : files) {
+                if (file.getName().endsWith(".tmp")) {
+                    file.delete();
+                }
+            }
+        }
+
+        Collections.sort(loaded, (a, b) -> Long.compare(a.getValue().accessed, b.getValue().accessed));
+        for (Map.Entry<String, Entry> item : loaded) {
+            this.entries.put(item.getKey(), item.getValue());
+            this.size += item.getValue().size;
+        }
+    }
+
+    private void save(String remoteUrl, Entry entry) {
+        try {
+            JSONObject obj = new JSONObject();
+            obj.put("file", entry.fileName);
+            obj.put("validator", entry.validator);
+            obj.put("size", entry.size);
+            obj.put("accessed", entry.accessed);
+
+            this.preferences.edit().putString(remoteUrl, obj.toString()).apply();
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private File getFile(Entry entry) {
+        return new File(this.directory, entry.fileName);
+    }
+
+    /**
+     * Get cache file name for given URL
+     *
+     * @param remoteUrl Remote URL
+     * @return SHA-1 of the URL as hex string
+     */
+    private static String getFileName(String remoteUrl) {
+        try {
+            return Utils.toHex(MessageDigest.getInstance("SHA-1").digest(remoteUrl.getBytes("UTF-8")));
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            return Integer.toHexString(remoteUrl.hashCode());
+        }
+    }
+
+    /**
+     * Cached file of one URL
+     */
+    private static class Entry {
+        final String fileName;
+        final String validator;
+        final long size;
+        long accessed;
+
+        Entry(String fileName, String validator, long size, long accessed) {
+            this.fileName = fileName;
+            this.validator = validator;
+            this.size = size;
+            this.accessed = accessed;
+        }
+    }
+}
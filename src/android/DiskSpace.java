@@ -0,0 +1,149 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+import android.net.Uri;
+import android.system.ErrnoException;
+import android.system.Os;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Disk space
+ * Checks free space needed by a download before it starts and preallocates files written by the plugin.
+ */
+final class DiskSpace {
+    /**
+     * Tolerance when comparing free space of two directories, other apps may write in between
+     */
+    private static final long SAME_VOLUME_TOLERANCE = 1024 * 1024;
+
+    private DiskSpace() {
+    }
+
+    /**
+     * Check that the temporary and destination volumes can hold given download.
+     * Needed are the download itself, a copy of it when it can not be renamed into place
+     * and the extracted files next to the archive.
+     *
+     * @param item Download item
+     * @param size Download size in bytes
+     * @throws DownloadException Not enough free space
+     * @throws IOException IO Error
+     */
+    static void check(DownloadItem item, long size) throws DownloadException, IOException {
+        File destinationFile = new File(Uri.parse(item.getDestinationFileUrl()).getPath());
+        File destinationDir = destinationFile.getParentFile();
+        long extracted = 0;
+
+        if (item.isExtract()) {
+            extracted = item.getExpectedExtractedSize() >= 0 ? item.getExpectedExtractedSize() : size;
+        }
+
+        if (item.isStreaming()) {
+            require(destinationDir, extracted);
+            return;
+        }
+
+        // Destination file is removed before the download is moved into place
+        long released = !item.isExtract() && destinationFile.isFile() ? destinationFile.length() : 0;
+        File temporaryDir = new File(Uri.parse(item.getTemporaryFileUrl()).getPath()).getParentFile();
+
+        if (!isSameVolume(temporaryDir, destinationDir)) {
+            require(temporaryDir, size);
+            require(destinationDir, size + extracted - released);
+        } else if (item.isStageInDestination()) {
+            // Renamed in place
+            require(destinationDir, size + extracted - released);
+        } else {
+            // Other directories may be on other mount points of the same volume, the download is copied then
+            require(destinationDir, size + Math.max(size - released, extracted));
+        }
+    }
+
+    /**
+     * Preallocate given range of a file, so its blocks are reserved at once and not fragmented.
+     * File systems without support keep writing as before.
+     *
+     * @param file Open file
+     * @param offset Start of the range
+     * @param length Length of the range
+     */
+    static void preallocate(RandomAccessFile file, long offset, long length) {
+        if (length <= 0) {
+            return;
+        }
+
+        try {
+            Os.posix_fallocate(file.getFD(), offset, length);
+        } catch (ErrnoException | IOException e) {
+            System.err.println("Exception: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Check free space of the volume of given directory
+     *
+     * @param dir Directory, may not exist yet
+     * @param needed Bytes needed
+     * @throws DownloadException Not enough free space
+     */
+    private static void require(File dir, long needed) throws DownloadException {
+        File existing = getExisting(dir);
+        long available = existing.getUsableSpace();
+
+        if (needed > available) {
+            throw new DownloadException(108, "Not enough free space: " + needed + " bytes needed, "
+                    + available + " bytes available in " + existing.getPath() + ".");
+        }
+    }
+
+    /**
+     * Check if two directories are on the same volume, comparing size and free space of their volumes
+     *
+     * @param a Directory
+     * @param b Directory
+     * @return True if they are on the same volume
+     */
+    private static boolean isSameVolume(File a, File b) {
+        File existingA = getExisting(a);
+        File existingB = getExisting(b);
+
+        return existingA.getTotalSpace() == existingB.getTotalSpace()
+                && Math.abs(existingA.getUsableSpace() - existingB.getUsableSpace()) <= SAME_VOLUME_TOLERANCE;
+    }
+
+    /**
+     * Get given directory or its nearest existing parent
+     *
+     * @param dir Directory
+     * @return Existing directory
+     */
+    private static File getExisting(File dir) {
+        File existing = dir.getAbsoluteFile();
+        while (!existing.exists() && null != existing.getParentFile()) {
+            existing = existing.getParentFile();
+        }
+
+        return existing;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+import java.util.Collection;
+
+/**
+ * Download backend
+ * Transfers remote files into the temporary file of each download item.
+ */
+interface DownloadBackend {
+    String DOWNLOAD_MANAGER = "downloadManager";
+    String HTTP = "http";
+
+    interface Listener {
+        /**
+         * Item has got its ID and is about to be transferred
+         *
+         * @param item Download item
+         */
+        void onStarted(DownloadItem item);
+
+        /**
+         * Transfer progress
+         *
+         * @param item Download item
+         * @param status Current status
+         * @param progress Current progress
+         */
+        void onProgress(DownloadItem item, String status, int progress);
+
+        /**
+         * Transfer has been finished, temporary file is complete
+         *
+         * @param item Download item
+         */
+        void onSuccess(DownloadItem item);
+
+        /**
+         * Transfer has been stopped outside of the plugin
+         *
+         * @param item Download item
+         */
+        void onCancelled(DownloadItem item);
+
+        /**
+         * Transfer has failed
+         *
+         * @param item Download item
+         * @param error Error
+         */
+        void onFailure(DownloadItem item, DownloadException error);
+    }
+
+    /**
+     * Start transfers for given items, errors of single items are reported to the listener
+     *
+     * @param items Download items
+     */
+    void start(Collection<DownloadItem> items);
+
+    /**
+     * Stop reporting given item, the transfer is kept if it can be taken over by another item
+     *
+     * @param item Download item
+     */
+    void release(DownloadItem item);
+
+    /**
+     * Stop transfer of given item and remove its data
+     *
+     * @param item Download item
+     */
+    void remove(DownloadItem item);
+
+    /**
+     * Stop reporting all items
+     */
+    void shutdown();
+}
@@ -0,0 +1,112 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+import org.apache.cordova.CallbackContext;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Download batch
+ * Group of download items sharing one callback and reporting aggregate progress.
+ */
+class DownloadBatch {
+    private final CallbackContext callback;
+    private final Map<String, Integer> progress = new HashMap<String, Integer>();
+    private final Map<String, String> statuses = new HashMap<String, String>();
+    private int finished = 0;
+    private int unchanged = 0;
+    private int failed = 0;
+    private int cancelled = 0;
+    private long progressSum = 0;
+
+    DownloadBatch(CallbackContext callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * Register item in this batch
+     *
+     * @param item Download item
+     */
+    public synchronized void add(DownloadItem item) {
+        item.setBatch(this);
+        item.setCallback(this.callback);
+        this.progress.put(item.getRemoteUrl(), 0);
+        this.statuses.put(item.getRemoteUrl(), Utils.STATUS_NEW);
+    }
+
+    /**
+     * Update item state and get aggregate state of the batch.
+     * Aggregate counters are kept up to date here, so no item has to be rescanned.
+     *
+     * @param item Download item
+     * @param status Item status
+     * @param progress Item progress
+     * @return JSONObject
+     * @throws JSONException JSON error
+     */
+    public synchronized JSONObject update(DownloadItem item, String status, int progress) throws JSONException {
+        String url = item.getRemoteUrl();
+
+        if (this.statuses.containsKey(url) && !Utils.isFinalStatus(this.statuses.get(url))) {
+            int current = Utils.isFinalStatus(status) ? 100 : progress;
+
+            this.progressSum += current - this.progress.get(url);
+            this.progress.put(url, current);
+            this.statuses.put(url, status);
+
+            if (Utils.STATUS_FINISHED.equals(status)) {
+                this.finished++;
+            } else if (Utils.STATUS_UNCHANGED.equals(status)) {
+                this.unchanged++;
+            } else if (Utils.STATUS_FAILED.equals(status)) {
+                this.failed++;
+            } else if (Utils.STATUS_CANCELLED.equals(status)) {
+                this.cancelled++;
+            }
+        }
+
+        return this.toJSON();
+    }
+
+    /**
+     * Get aggregate state of the batch
+     *
+     * @return JSONObject
+     * @throws JSONException JSON error
+     */
+    private JSONObject toJSON() throws JSONException {
+        int total = this.statuses.size();
+
+        JSONObject obj = new JSONObject();
+        obj.put("total", total);
+        obj.put("finished", this.finished);
+        obj.put("unchanged", this.unchanged);
+        obj.put("failed", this.failed);
+        obj.put("cancelled", this.cancelled);
+        obj.put("progress", total > 0 ? (int) (this.progressSum / total) : 0);
+
+        return obj;
+    }
+}
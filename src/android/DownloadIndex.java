@@ -0,0 +1,82 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.Map;
+
+/**
+ * Download index
+ * Persisted remote URL to download ID map, so downloads can be found without scanning DownloadManager.
+ */
+class DownloadIndex {
+    private static final String PREFERENCES_NAME = "eu.intrasoft.cordova.filesdownloader.index";
+    private static final String KEY_INITIALIZED = "initialized";
+    private static final String KEY_URL_PREFIX = "url:";
+
+    private final SharedPreferences preferences;
+
+    DownloadIndex(Context context) {
+        this.preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Check if index has been built from DownloadManager at least once
+     *
+     * @return True if index is usable
+     */
+    public boolean isInitialized() {
+        return this.preferences.getLong(KEY_INITIALIZED, 0) > 0;
+    }
+
+    /**
+     * Get download ID for given URL
+     *
+     * @param remoteUrl Remote URL
+     * @return Download ID or -1
+     */
+    public long get(String remoteUrl) {
+        return this.preferences.getLong(KEY_URL_PREFIX + remoteUrl, -1L);
+    }
+
+    public void put(String remoteUrl, long id) {
+        this.preferences.edit().putLong(KEY_URL_PREFIX + remoteUrl, id).apply();
+    }
+
+    public void remove(String remoteUrl) {
+        this.preferences.edit().remove(KEY_URL_PREFIX + remoteUrl).apply();
+    }
+
+    /**
+     * Save entries found by a full DownloadManager scan and mark index as usable
+     *
+     * @param entries Download IDs by remote URL
+     */
+    public void update(Map<String, Long> entries) {
+        SharedPreferences.Editor editor = this.preferences.edit();
+        for (Map.Entry<String, Long> entry : entries.entrySet()) {
+            editor.putLong(KEY_URL_PREFIX + entry.getKey(), entry.getValue());
+        }
+
+        editor.putLong(KEY_INITIALIZED, System.currentTimeMillis()).apply();
+    }
+}
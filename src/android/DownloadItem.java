@@ -31,25 +31,62 @@ import org.json.JSONObject;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Download item
  */
 class DownloadItem {
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final long DEFAULT_PROGRESS_INTERVAL = 100;
+    private static final int DEFAULT_PROGRESS_STEP = 1;
+
     private long id;
     private String remoteUrl;
     private String destinationFileUrl;
     private String title;
     private boolean extract;
+    private String archiveFormat = Utils.FORMAT_ZIP;
+    private boolean stageInDestination;
+    private int extractThreads = 1;
+    private boolean streaming;
+    private boolean delta;
+    private boolean incremental;
+    private String backend = DownloadBackend.DOWNLOAD_MANAGER;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private int segments = 1;
+    private int priority = 0;
+    private boolean cache;
+    private volatile String validator;
+    private boolean conditional;
+    private RemoteFileInfo remoteInfo;
+    private String hashAlgorithm;
+    private String expectedHash;
+    private volatile String computedHash;
+    private long expectedSize = -1;
+    private long expectedExtractedSize = -1;
+    private boolean checkSpace;
     private CallbackContext callback;
-    private Timer timer;
+    private DownloadBatch batch;
+    private final AtomicBoolean completed = new AtomicBoolean(false);
+    private long progressInterval = DEFAULT_PROGRESS_INTERVAL;
+    private int progressStep = DEFAULT_PROGRESS_STEP;
+    private String lastStatus;
+    private int lastProgress;
+    private long lastResultTime;
+    private volatile String status;
+    private volatile int progress;
+    private ProgressChannel channel;
+    private final TransferStats downloadStats = new TransferStats();
+    private final TransferStats extractStats = new TransferStats();
+    private final DownloadMetrics metrics;
 
     DownloadItem(String remoteUrl, String destinationFileUrl, CallbackContext callback) {
         this.remoteUrl = remoteUrl;
         this.destinationFileUrl = destinationFileUrl;
         this.callback = callback;
+        this.metrics = new DownloadMetrics(remoteUrl, this.downloadStats, this.extractStats);
     }
 
     public long getId() {
@@ -69,12 +106,16 @@ class DownloadItem {
     }
 
     /**
-     * Get temporary file url (in the downloads folder)
+     * Get temporary file url (in the downloads folder or next to the destination file)
      *
      * @return String
      * @throws IOException IO Error
      */
     public String getTemporaryFileUrl() throws IOException {
+        if (this.isStageInDestination()) {
+            return this.getDestinationFileUrl().concat(".download");
+        }
+
         File downloadDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS);
 
         String filename = this.getDestinationFileUrl().substring(this.getDestinationFileUrl().lastIndexOf("/") + 1);
@@ -99,6 +140,226 @@ class DownloadItem {
         this.extract = extract;
     }
 
+    public String getArchiveFormat() {
+        return archiveFormat;
+    }
+
+    public void setArchiveFormat(String archiveFormat) {
+        this.archiveFormat = archiveFormat;
+    }
+
+    public int getExtractThreads() {
+        return extractThreads;
+    }
+
+    public void setExtractThreads(int extractThreads) {
+        this.extractThreads = extractThreads;
+    }
+
+    public boolean isCache() {
+        return cache;
+    }
+
+    public void setCache(boolean cache) {
+        this.cache = cache;
+    }
+
+    public String getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
+    public String getExpectedHash() {
+        return expectedHash;
+    }
+
+    /**
+     * Set hash the downloaded file has to match
+     *
+     * @param hashAlgorithm Algorithm name, e.g. SHA-256
+     * @param expectedHash Hex digest
+     */
+    public void setExpectedHash(String hashAlgorithm, String expectedHash) {
+        this.hashAlgorithm = hashAlgorithm;
+        this.expectedHash = null != expectedHash ? expectedHash.toLowerCase(Locale.ROOT) : null;
+    }
+
+    public String getComputedHash() {
+        return computedHash;
+    }
+
+    public void setComputedHash(String computedHash) {
+        this.computedHash = computedHash;
+    }
+
+    /**
+     * Check given hash against the expected one
+     *
+     * @param hash Lowercase hex digest
+     * @throws DownloadException Hash does not match
+     */
+    public void verifyHash(String hash) throws DownloadException {
+        if (null != this.expectedHash && !this.expectedHash.equals(hash)) {
+            throw new DownloadException(107, "Downloaded file does not match expected hash.");
+        }
+    }
+
+    public long getExpectedSize() {
+        return expectedSize;
+    }
+
+    public void setExpectedSize(long expectedSize) {
+        this.expectedSize = expectedSize;
+    }
+
+    public long getExpectedExtractedSize() {
+        return expectedExtractedSize;
+    }
+
+    public void setExpectedExtractedSize(long expectedExtractedSize) {
+        this.expectedExtractedSize = expectedExtractedSize;
+    }
+
+    public boolean isCheckSpace() {
+        return checkSpace;
+    }
+
+    public void setCheckSpace(boolean checkSpace) {
+        this.checkSpace = checkSpace;
+    }
+
+    public boolean isConditional() {
+        return conditional;
+    }
+
+    public void setConditional(boolean conditional) {
+        this.conditional = conditional;
+    }
+
+    public RemoteFileInfo getRemoteInfo() {
+        return remoteInfo;
+    }
+
+    public void setRemoteInfo(RemoteFileInfo remoteInfo) {
+        this.remoteInfo = remoteInfo;
+    }
+
+    public String getValidator() {
+        return validator;
+    }
+
+    public void setValidator(String validator) {
+        this.validator = validator;
+    }
+
+    public boolean isDelta() {
+        return delta;
+    }
+
+    public void setDelta(boolean delta) {
+        this.delta = delta;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public String getBackend() {
+        return backend;
+    }
+
+    public void setBackend(String backend) {
+        this.backend = backend;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = Math.max(1024, bufferSize);
+    }
+
+    public int getSegments() {
+        return segments;
+    }
+
+    public void setSegments(int segments) {
+        this.segments = Math.max(1, segments);
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    public boolean isStageInDestination() {
+        return stageInDestination;
+    }
+
+    public void setStageInDestination(boolean stageInDestination) {
+        this.stageInDestination = stageInDestination;
+    }
+
+    public long getProgressInterval() {
+        return progressInterval;
+    }
+
+    public void setProgressInterval(long progressInterval) {
+        this.progressInterval = Math.max(0, progressInterval);
+    }
+
+    public int getProgressStep() {
+        return progressStep;
+    }
+
+    public void setProgressStep(int progressStep) {
+        this.progressStep = Math.max(1, progressStep);
+    }
+
+    public TransferStats getDownloadStats() {
+        return downloadStats;
+    }
+
+    public TransferStats getExtractStats() {
+        return extractStats;
+    }
+
+    public DownloadMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get last reported status, including progress results which were not sent
+     *
+     * @return Status or null if nothing has been reported yet
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    public int getProgress() {
+        return progress;
+    }
+
+    public void setChannel(ProgressChannel channel) {
+        this.channel = channel;
+    }
+
     public CallbackContext setCallback(CallbackContext callback) {
         return this.callback = callback;
     }
@@ -107,6 +368,23 @@ class DownloadItem {
         return callback;
     }
 
+    public DownloadBatch getBatch() {
+        return batch;
+    }
+
+    public void setBatch(DownloadBatch batch) {
+        this.batch = batch;
+    }
+
+    /**
+     * Mark this item as completed
+     *
+     * @return False if it has already been completed
+     */
+    public boolean markCompleted() {
+        return this.completed.compareAndSet(false, true);
+    }
+
     /**
      * Get new request for this item
      *
@@ -121,18 +399,39 @@ class DownloadItem {
         return request;
     }
 
-    public void stopMonitoring() {
-        if (null != this.timer) {
-            this.timer.cancel();
-            this.timer = null;
+    /**
+     * Check if given result should be sent to UI.
+     * Status changes are always sent, progress changes only if they are
+     * big enough and the last result is old enough.
+     *
+     * @param status Current status
+     * @param progress Current progress
+     * @return True if result should be sent
+     */
+    private synchronized boolean acceptResult(String status, int progress) {
+        long now = System.nanoTime() / 1000000;
+
+        if (status.equals(this.lastStatus)) {
+            if (progress == this.lastProgress) {
+                return false;
+            }
+
+            // Progress is sent by the progress channel
+            if (null != this.channel && this.channel.isExclusive()) {
+                return false;
+            }
+
+            if (progress < 100 && (Math.abs(progress - this.lastProgress) < this.progressStep
+                    || now - this.lastResultTime < this.progressInterval)) {
+                return false;
+            }
         }
-    }
 
-    public void startMonitoring(TimerTask timerTask, long interval) {
-        final long id = this.getId();
+        this.lastStatus = status;
+        this.lastProgress = progress;
+        this.lastResultTime = now;
 
-        this.timer = new Timer();
-        timer.schedule(timerTask, 0, interval);
+        return true;
     }
 
     /**
@@ -142,8 +441,22 @@ class DownloadItem {
      * @param progress Current progress
      */
     public void sendResult(String status, int progress) {
+        this.status = status;
+        this.progress = progress;
+
+        if (Utils.isFinalStatus(status)) {
+            this.metrics.complete(status);
+        }
+
+        if (!this.acceptResult(status, progress)) {
+            return;
+        }
+
         try {
             JSONObject info = Utils.getResultJSON(this, status, progress);
+            if (null != this.batch) {
+                info.put("batch", this.batch.update(this, status, progress));
+            }
             PluginResult progressUpdate = new PluginResult(PluginResult.Status.OK, info);
             progressUpdate.setKeepCallback(true);
             this.getCallback().sendPluginResult(progressUpdate);
@@ -171,7 +484,18 @@ class DownloadItem {
      */
     public void sendError(String message, int code, Exception error) {
         try {
-            this.getCallback().error(Utils.getErrorJSON(message, code, error.getMessage()));
+            JSONObject obj = Utils.getErrorJSON(message, code, error.getMessage());
+
+            if (null != this.batch) {
+                // Batch callback is shared, keep it alive for other items
+                obj.put("url", this.getRemoteUrl());
+                PluginResult result = new PluginResult(PluginResult.Status.ERROR, obj);
+                result.setKeepCallback(true);
+                this.getCallback().sendPluginResult(result);
+                return;
+            }
+
+            this.getCallback().error(obj);
         } catch (JSONException e) {
             e.printStackTrace();
             this.getCallback().sendPluginResult(new PluginResult(PluginResult.Status.JSON_EXCEPTION));
@@ -0,0 +1,286 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+import android.app.Activity;
+import android.app.DownloadManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.Cursor;
+import android.net.Uri;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Download backend using Android DownloadManager
+ */
+class DownloadManagerBackend implements DownloadBackend {
+    /**
+     * Fallback poll interval of running downloads, row changes are reported as they happen
+     */
+    private static final long UPDATE_INTERVAL = 1000;
+
+    private final Activity activity;
+    private final DownloadManager downloadManager;
+    private final DownloadIndex index;
+    private final DownloadMonitor monitor;
+    private final Listener listener;
+    private BroadcastReceiver downloadReceiver = null;
+    private boolean receiverRegistered = false;
+
+    DownloadManagerBackend(Activity activity, Listener listener) {
+        this.activity = activity;
+        this.listener = listener;
+        this.downloadManager = (DownloadManager) activity.getSystemService(Context.DOWNLOAD_SERVICE);
+        this.index = new DownloadIndex(activity);
+        this.monitor = new DownloadMonitor(this.downloadManager, activity.getContentResolver(), UPDATE_INTERVAL, new DownloadMonitor.Listener() {
+            @Override
+            public void onUpdate(DownloadItem item, DownloadItemInfo info) {
+                checkDownloadItem(item, info);
+            }
+        });
+    }
+
+    @Override
+    public void start(Collection<DownloadItem> items) {
+        Set<String> uris = new HashSet<String>(items.size() * 2);
+        for (DownloadItem item : items) {
+            uris.add(item.getRemoteUrl());
+        }
+
+        Map<String, DownloadItemInfo> infos = this.findDownloadInfoByUris(uris);
+        List<DownloadItem> started = new ArrayList<DownloadItem>(items.size());
+
+        for (DownloadItem item : items) {
+            try {
+                DownloadItemInfo info = infos.get(item.getRemoteUrl());
+
+                if (null == info) {
+                    File temporaryFile = new File(Uri.parse(item.getTemporaryFileUrl()).getPath());
+                    if (temporaryFile.exists()) {
+                        if (!temporaryFile.delete()) {
+                            throw new DownloadException(100, "Could not delete existing temporary file.");
+                        }
+                    }
+
+                    DownloadManager.Request request = item.getNewRequest();
+                    item.setId(this.downloadManager.enqueue(request));
+                    this.index.put(item.getRemoteUrl(), item.getId());
+                } else {
+                    item.setId(info.getId());
+                }
+
+                this.listener.onStarted(item);
+                started.add(item);
+            } catch (DownloadException e) {
+                this.listener.onFailure(item, e);
+            } catch (Exception e) {
+                this.listener.onFailure(item, new DownloadException(0, e.getMessage()));
+            }
+        }
+
+        // New items are polled right away, so already finished downloads are reported at once
+        this.monitor.addAll(started);
+        this.checkDownloadReceiver();
+    }
+
+    @Override
+    public void release(DownloadItem item) {
+        this.monitor.remove(item);
+        this.checkDownloadReceiver();
+    }
+
+    @Override
+    public void remove(DownloadItem item) {
+        this.monitor.remove(item);
+        this.downloadManager.remove(item.getId());
+        this.index.remove(item.getRemoteUrl());
+        this.checkDownloadReceiver();
+    }
+
+    @Override
+    public void shutdown() {
+        this.monitor.shutdown();
+        this.checkDownloadReceiver();
+    }
+
+    /**
+     * Report current state of given item
+     *
+     * @param item Download item
+     * @param info Download info or null if download does not exist anymore
+     */
+    private void checkDownloadItem(DownloadItem item, DownloadItemInfo info) {
+        int status = null != info ? info.getStatus() : DownloadManager.STATUS_FAILED;
+
+        if (null != info) {
+            item.getDownloadStats().update(info.getBytesDownloaded(), info.getBytesTotal());
+            if (info.getBytesDownloaded() > 0) {
+                item.getMetrics().mark(DownloadMetrics.FIRST_BYTE);
+            }
+        }
+
+        if (status == DownloadManager.STATUS_SUCCESSFUL) {
+            this.monitor.remove(item);
+            this.listener.onSuccess(item);
+        } else if (status == DownloadManager.STATUS_FAILED) {
+            this.monitor.remove(item);
+            this.listener.onCancelled(item);
+        } else {
+            this.listener.onProgress(item, Utils.getStatus(status), info.getDownloadProgress());
+        }
+    }
+
+    /**
+     * Find download info for given URIs.
+     * Uses the download index and falls back to a full scan when the index is stale.
+     *
+     * @param uris Download URIs
+     * @return Map of download info by URI
+     */
+    private Map<String, DownloadItemInfo> findDownloadInfoByUris(Set<String> uris) {
+        if (this.index.isInitialized()) {
+            List<String> indexedUris = new ArrayList<String>(uris.size());
+            long[] ids = new long[uris.size()];
+
+            for (String uri : uris) {
+                long id = this.index.get(uri);
+                if (id != -1) {
+                    ids[indexedUris.size()] = id;
+                    indexedUris.add(uri);
+                }
+            }
+
+            Map<String, DownloadItemInfo> infos = new HashMap<String, DownloadItemInfo>();
+            Map<Long, DownloadItemInfo> infosById = Utils.findDownloadInfoByIds(this.downloadManager, Arrays.copyOf(ids, indexedUris.size()));
+            boolean stale = false;
+
+            for (int i = 0; i < indexedUris.size(); i++) {
+                String uri = indexedUris.get(i);
+                DownloadItemInfo info = infosById.get(ids[i]);
+
+                if (null == info || !uri.equals(info.getUri())) {
+                    // Download removed outside of this plugin
+                    this.index.remove(uri);
+                    stale = true;
+                } else if (info.getStatus() != DownloadManager.STATUS_FAILED) {
+                    infos.put(uri, info);
+                }
+            }
+
+            if (!stale) {
+                return infos;
+            }
+        }
+
+        return this.scanDownloadInfoByUris(uris);
+    }
+
+    /**
+     * Find download info for given URIs by scanning all downloads and refresh the download index
+     *
+     * @param uris Download URIs
+     * @return Map of download info by URI
+     */
+    private Map<String, DownloadItemInfo> scanDownloadInfoByUris(Set<String> uris) {
+        Map<String, DownloadItemInfo> infos = new HashMap<String, DownloadItemInfo>();
+        Map<String, Long> entries = new HashMap<String, Long>();
+        DownloadManager.Query query = new DownloadManager.Query();
+        query.setFilterByStatus(
+                    DownloadManager.STATUS_PENDING |
+                    DownloadManager.STATUS_RUNNING |
+                    DownloadManager.STATUS_PAUSED |
+                    DownloadManager.STATUS_SUCCESSFUL
+        );
+
+        try (Cursor cursor = this.downloadManager.query(query)) {
+            int colId = cursor.getColumnIndex(DownloadManager.COLUMN_ID);
+            int colUri = cursor.getColumnIndex(DownloadManager.COLUMN_URI);
+
+            for (cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
+                String uri = cursor.getString(colUri);
+                if (entries.containsKey(uri)) {
+                    continue;
+                }
+
+                entries.put(uri, cursor.getLong(colId));
+                if (uris.contains(uri)) {
+                    infos.put(uri, Utils.getDownloadInfo(cursor));
+                }
+            }
+        }
+
+        this.index.update(entries);
+
+        return infos;
+    }
+
+    /**
+     * Get new broadcast receiver
+     *
+     * @return BroadcastReceiver
+     */
+    private BroadcastReceiver getNewDownloadReceiver() {
+        return new BroadcastReceiver() {
+            public void onReceive(Context context, Intent intent) {
+                long downloadId = intent.getLongExtra(DownloadManager.EXTRA_DOWNLOAD_ID, -1L);
+                if (downloadId == -1) return;
+
+                // Coalesced with the row change of the same download, so it is queried once
+                monitor.refresh(downloadId);
+            }
+        };
+    }
+
+    /**
+     * Register / unregister broadcast receiver
+     */
+    private synchronized void checkDownloadReceiver() {
+        if (!this.monitor.isEmpty()) {
+            if (null == this.downloadReceiver) {
+                this.downloadReceiver = this.getNewDownloadReceiver();
+            }
+
+            if (!this.receiverRegistered) {
+                this.activity.registerReceiver(this.downloadReceiver, new IntentFilter(DownloadManager.ACTION_DOWNLOAD_COMPLETE));
+                this.receiverRegistered = true;
+            }
+        } else {
+            if (this.receiverRegistered) {
+                try {
+                    this.activity.unregisterReceiver(this.downloadReceiver);
+                } catch (IllegalArgumentException e) {
+                    // do nothing
+                }
+                this.receiverRegistered = false;
+            }
+        }
+    }
+}
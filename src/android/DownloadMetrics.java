@@ -0,0 +1,202 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Download metrics
+ * Monotonic timestamps of the lifecycle phases of one download item.
+ * Each phase is recorded once, marking it again is a cheap no-op.
+ */
+class DownloadMetrics {
+    static final int ENQUEUED = 0;
+    static final int STARTED = 1;
+    static final int FIRST_BYTE = 2;
+    static final int DOWNLOADED = 3;
+    static final int FINALIZE_START = 4;
+    static final int FINALIZE_END = 5;
+    static final int EXTRACT_START = 6;
+    static final int EXTRACT_END = 7;
+    static final int COMPLETED = 8;
+
+    static final String[] PHASES = {
+            "enqueued", "started", "firstByte", "downloaded",
+            "finalizeStart", "finalizeEnd", "extractStart", "extractEnd", "completed"
+    };
+
+    /**
+     * Outcome of an item replaced by a newer download of the same URL
+     */
+    static final String OUTCOME_REPLACED = "replaced";
+
+    /**
+     * Durations derived from the phases: name, start phase and end phase
+     */
+    static final String[] DURATIONS = {"queued", "waiting", "transfer", "finalize", "extract", "total"};
+    private static final int[][] DURATION_PHASES = {
+            {ENQUEUED, STARTED},
+            {STARTED, FIRST_BYTE},
+            {FIRST_BYTE, DOWNLOADED},
+            {FINALIZE_START, FINALIZE_END},
+            {EXTRACT_START, EXTRACT_END},
+            {ENQUEUED, COMPLETED}
+    };
+
+    private final String remoteUrl;
+    private final TransferStats downloadStats;
+    private final TransferStats extractStats;
+    private final AtomicLongArray times = new AtomicLongArray(PHASES.length);
+    private final long enqueuedAt = System.currentTimeMillis();
+    private volatile String outcome;
+    private MetricsCollector collector;
+
+    DownloadMetrics(String remoteUrl, TransferStats downloadStats, TransferStats extractStats) {
+        this.remoteUrl = remoteUrl;
+        this.downloadStats = downloadStats;
+        this.extractStats = extractStats;
+        this.times.set(ENQUEUED, System.nanoTime());
+    }
+
+    public String getRemoteUrl() {
+        return remoteUrl;
+    }
+
+    public String getOutcome() {
+        return outcome;
+    }
+
+    public TransferStats getDownloadStats() {
+        return downloadStats;
+    }
+
+    public TransferStats getExtractStats() {
+        return extractStats;
+    }
+
+    /**
+     * Set collector notified when the item completes
+     *
+     * @param collector Metrics collector
+     */
+    public void setCollector(MetricsCollector collector) {
+        this.collector = collector;
+        collector.add(this);
+    }
+
+    /**
+     * Record current time for given phase, unless it has already been recorded
+     *
+     * @param phase Phase
+     */
+    public void mark(int phase) {
+        if (this.times.get(phase) == 0) {
+            this.times.compareAndSet(phase, 0, System.nanoTime());
+        }
+    }
+
+    /**
+     * Record completion of the item
+     *
+     * @param status Final status
+     */
+    public void complete(String status) {
+        if (!this.times.compareAndSet(COMPLETED, 0, System.nanoTime())) {
+            return;
+        }
+
+        this.outcome = status;
+        if (null != this.collector) {
+            this.collector.record(this);
+        }
+    }
+
+    public boolean isCompleted() {
+        return this.times.get(COMPLETED) != 0;
+    }
+
+    /**
+     * Get time between two phases
+     *
+     * @param from Start phase
+     * @param to End phase
+     * @return Milliseconds or -1 if one of the phases was not recorded
+     */
+    public long getDuration(int from, int to) {
+        long start = this.times.get(from);
+        long end = this.times.get(to);
+
+        return start != 0 && end != 0 ? (end - start) / 1000000 : -1;
+    }
+
+    /**
+     * Get derived duration
+     *
+     * @param index Index in DURATIONS
+     * @return Milliseconds or -1 if unknown
+     */
+    public long getDuration(int index) {
+        return this.getDuration(DURATION_PHASES[index][0], DURATION_PHASES[index][1]);
+    }
+
+    /**
+     * Get metrics as JSON. Phases are milliseconds since the item was enqueued.
+     *
+     * @return JSONObject
+     * @throws JSONException JSON error
+     */
+    public JSONObject toJSON() throws JSONException {
+        JSONObject obj = new JSONObject();
+        obj.put("url", this.remoteUrl);
+        obj.put("enqueuedAt", this.enqueuedAt);
+        if (null != this.outcome) {
+            obj.put("status", this.outcome);
+        }
+
+        JSONObject phases = new JSONObject();
+        for (int i = 1; i < PHASES.length; i++) {
+            long time = this.getDuration(ENQUEUED, i);
+            if (time >= 0) {
+                phases.put(PHASES[i], time);
+            }
+        }
+        obj.put("phases", phases);
+
+        JSONObject durations = new JSONObject();
+        for (int i = 0; i < DURATIONS.length; i++) {
+            long duration = this.getDuration(i);
+            if (duration >= 0) {
+                durations.put(DURATIONS[i], duration);
+            }
+        }
+        obj.put("durations", durations);
+
+        obj.put("bytesDownloaded", this.downloadStats.getBytes());
+        obj.put("bytesExtracted", this.extractStats.getBytes());
+        obj.put("entriesExtracted", this.extractStats.getEntries());
+        obj.put("bytesSkipped", this.extractStats.getBytesSkipped());
+        obj.put("entriesSkipped", this.extractStats.getEntriesSkipped());
+
+        return obj;
+    }
+}
@@ -0,0 +1,351 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+import android.app.DownloadManager;
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Download monitor
+ * Queries tracked downloads when their DownloadManager rows change, changes are coalesced into a single query.
+ * Items without changes are polled as a fallback, backing off while they are paused, pending or stalled.
+ */
+class DownloadMonitor {
+    interface Listener {
+        /**
+         * Called for every queried item
+         *
+         * @param item Download item
+         * @param info Current download info or null if the download does not exist anymore
+         */
+        void onUpdate(DownloadItem item, DownloadItemInfo info);
+    }
+
+    /**
+     * Window in which row changes are coalesced into one query
+     */
+    private static final long CHANGE_DELAY = 100;
+
+    /**
+     * Max fallback poll interval
+     */
+    private static final long MAX_INTERVAL = 30000;
+
+    private static final Uri DOWNLOADS_URI = Uri.parse("content://downloads/my_downloads");
+
+    /**
+     * Fallback poll state of one download
+     */
+    private static class Schedule {
+        long next;
+        long delay;
+        int status = -1;
+        long bytes = -1;
+
+        Schedule(long next, long delay) {
+            this.next = next;
+            this.delay = delay;
+        }
+    }
+
+    private final DownloadManager downloadManager;
+    private final ContentResolver contentResolver;
+    private final long interval;
+    private final Listener listener;
+    private final ConcurrentHashMap<Long, DownloadItem> items = new ConcurrentHashMap<Long, DownloadItem>();
+    private final Map<Long, Schedule> schedules = new HashMap<Long, Schedule>();
+    private final Set<Long> changed = new HashSet<Long>();
+    private final Runnable tick = this::poll;
+    private HandlerThread thread;
+    private Handler handler;
+    private ContentObserver observer;
+    private long tickTime = -1;
+
+    DownloadMonitor(DownloadManager downloadManager, ContentResolver contentResolver, long interval, Listener listener) {
+        this.downloadManager = downloadManager;
+        this.contentResolver = contentResolver;
+        this.interval = interval;
+        this.listener = listener;
+    }
+
+    /**
+     * Start monitoring given items. New items are queried immediately.
+     *
+     * @param newItems Download items
+     */
+    public synchronized void addAll(Collection<DownloadItem> newItems) {
+        if (newItems.isEmpty()) {
+            return;
+        }
+
+        this.start();
+
+        long now = SystemClock.uptimeMillis();
+        for (DownloadItem item : newItems) {
+            this.items.put(item.getId(), item);
+            this.schedules.put(item.getId(), new Schedule(now + this.interval, this.interval));
+            this.changed.add(item.getId());
+        }
+
+        this.scheduleTick(now);
+    }
+
+    /**
+     * Stop monitoring given item
+     *
+     * @param item Download item
+     */
+    public synchronized void remove(DownloadItem item) {
+        if (this.items.remove(item.getId(), item)) {
+            this.schedules.remove(item.getId());
+            this.changed.remove(item.getId());
+        }
+
+        if (this.items.isEmpty()) {
+            this.stop();
+        }
+    }
+
+    /**
+     * Query given item soon, together with other changed items
+     *
+     * @param id Download ID
+     */
+    public synchronized void refresh(long id) {
+        Schedule schedule = this.schedules.get(id);
+        if (null == schedule) {
+            return;
+        }
+
+        schedule.delay = this.interval;
+        this.changed.add(id);
+        this.scheduleTick(SystemClock.uptimeMillis() + CHANGE_DELAY);
+    }
+
+    /**
+     * Query all items soon
+     */
+    private synchronized void refreshAll() {
+        for (Map.Entry<Long, Schedule> entry : this.schedules.entrySet()) {
+            entry.getValue().delay = this.interval;
+            this.changed.add(entry.getKey());
+        }
+
+        this.scheduleTick(SystemClock.uptimeMillis() + CHANGE_DELAY);
+    }
+
+    public boolean isEmpty() {
+        return this.items.isEmpty();
+    }
+
+    /**
+     * Stop monitoring all items
+     */
+    public synchronized void shutdown() {
+        this.items.clear();
+        this.schedules.clear();
+        this.changed.clear();
+        this.stop();
+    }
+
+    /**
+     * Start monitor thread and observe download rows
+     */
+    private void start() {
+        if (null != this.thread) {
+            return;
+        }
+
+        this.thread = new HandlerThread("FilesDownloader-monitor");
+        this.thread.start();
+        this.handler = new Handler(this.thread.getLooper());
+        this.observer = new ContentObserver(this.handler) {
+            @Override
+            public void onChange(boolean selfChange, Uri uri) {
+                onRowChange(uri);
+            }
+        };
+
+        try {
+            this.contentResolver.registerContentObserver(DOWNLOADS_URI, true, this.observer);
+        } catch (SecurityException e) {
+            // Fallback poll only
+            System.err.println("Exception: " + e.getMessage());
+            this.observer = null;
+        }
+    }
+
+    /**
+     * Stop monitor thread
+     */
+    private void stop() {
+        if (null == this.thread) {
+            return;
+        }
+
+        if (null != this.observer) {
+            this.contentResolver.unregisterContentObserver(this.observer);
+            this.observer = null;
+        }
+
+        this.handler.removeCallbacks(this.tick);
+        this.thread.quitSafely();
+        this.thread = null;
+        this.handler = null;
+        this.tickTime = -1;
+    }
+
+    /**
+     * Handle change of a download row
+     *
+     * @param uri Row URI or null if unknown
+     */
+    private void onRowChange(Uri uri) {
+        String segment = null != uri ? uri.getLastPathSegment() : null;
+
+        try {
+            this.refresh(Long.parseLong(segment));
+        } catch (NumberFormatException e) {
+            this.refreshAll();
+        }
+    }
+
+    /**
+     * Schedule next query, unless one is scheduled earlier
+     *
+     * @param time Uptime in milliseconds
+     */
+    private void scheduleTick(long time) {
+        if (null == this.handler || (this.tickTime >= 0 && this.tickTime <= time)) {
+            return;
+        }
+
+        this.handler.removeCallbacks(this.tick);
+        this.handler.postAtTime(this.tick, time);
+        this.tickTime = time;
+    }
+
+    /**
+     * Query changed and due items, dispatch results to the listener and schedule next query
+     */
+    private void poll() {
+        long[] ids;
+
+        synchronized (this) {
+            this.tickTime = -1;
+            long now = SystemClock.uptimeMillis();
+
+            for (Map.Entry<Long, Schedule> entry : this.schedules.entrySet()) {
+                if (entry.getValue().next <= now) {
+                    this.changed.add(entry.getKey());
+                }
+            }
+
+            ids = new long[this.changed.size()];
+            int i = 0;
+            for (Long id : this.changed) {
+                ids[i++] = id;
+            }
+            this.changed.clear();
+        }
+
+        Map<Long, DownloadItemInfo> infos = null;
+        if (ids.length > 0) {
+            try {
+                infos = Utils.findDownloadInfoByIds(this.downloadManager, ids);
+            } catch (Exception e) {
+                System.err.println("Exception: " + e.getMessage());
+            }
+        }
+
+        if (null != infos) {
+            List<DownloadItem> tracked = new ArrayList<DownloadItem>(ids.length);
+            for (long id : ids) {
+                DownloadItem item = this.items.get(id);
+                if (null != item) {
+                    tracked.add(item);
+                }
+            }
+
+            for (DownloadItem item : tracked) {
+                this.listener.onUpdate(item, infos.get(item.getId()));
+            }
+        }
+
+        synchronized (this) {
+            long now = SystemClock.uptimeMillis();
+
+            for (long id : ids) {
+                Schedule schedule = this.schedules.get(id);
+                if (null != schedule) {
+                    this.reschedule(schedule, null != infos ? infos.get(id) : null, now);
+                }
+            }
+
+            long next = Long.MAX_VALUE;
+            for (Schedule schedule : this.schedules.values()) {
+                next = Math.min(next, schedule.next);
+            }
+            if (!this.changed.isEmpty()) {
+                next = Math.min(next, now + CHANGE_DELAY);
+            }
+
+            if (next != Long.MAX_VALUE) {
+                this.scheduleTick(next);
+            }
+        }
+    }
+
+    /**
+     * Set next fallback poll of a queried item.
+     * Running downloads making progress are polled at the base interval, others back off.
+     *
+     * @param schedule Poll state
+     * @param info Download info or null if unknown
+     * @param now Current uptime
+     */
+    private void reschedule(Schedule schedule, DownloadItemInfo info, long now) {
+        boolean progressing = null != info
+                && info.getStatus() == DownloadManager.STATUS_RUNNING
+                && (info.getStatus() != schedule.status || info.getBytesDownloaded() != schedule.bytes);
+
+        schedule.delay = progressing ? this.interval : Math.min(schedule.delay * 2, MAX_INTERVAL);
+        schedule.next = now + schedule.delay;
+
+        if (null != info) {
+            schedule.status = info.getStatus();
+            schedule.bytes = info.getBytesDownloaded();
+        }
+    }
+}
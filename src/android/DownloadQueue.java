@@ -0,0 +1,271 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Download queue
+ * Hands items to the backends by priority, keeping the number of active transfers limited.
+ */
+class DownloadQueue {
+    interface Starter {
+        /**
+         * Start transfers for given items
+         *
+         * @param items Download items
+         */
+        void start(List<DownloadItem> items);
+    }
+
+    interface Throttle {
+        /**
+         * Check if queued items should wait although there are free slots
+         *
+         * @return True to hold queued items back
+         */
+        boolean isBusy();
+    }
+
+    private final Starter starter;
+    private final Throttle throttle;
+    private final PriorityQueue<Entry> queue = new PriorityQueue<Entry>();
+    private final Map<String, Entry> queued = new HashMap<String, Entry>();
+    private final Map<String, DownloadItem> active = new HashMap<String, DownloadItem>();
+    private int maxActive = 0;
+    private long sequence = 0;
+
+    DownloadQueue(Starter starter, Throttle throttle) {
+        this.starter = starter;
+        this.throttle = throttle;
+    }
+
+    /**
+     * Set max number of active transfers
+     *
+     * @param maxActive Max number, 0 for no limit
+     */
+    public void setMaxActive(int maxActive) {
+        synchronized (this) {
+            this.maxActive = Math.max(0, maxActive);
+        }
+
+        this.pump();
+    }
+
+    /**
+     * Queue given items. Items replacing an active download of the same URL start right away,
+     * queued items of the same URL are dropped with cancelled status.
+     *
+     * @param items Download items
+     */
+    public void enqueue(Collection<DownloadItem> items) {
+        List<DownloadItem> replacing = new ArrayList<DownloadItem>();
+        List<DownloadItem> replaced = new ArrayList<DownloadItem>();
+
+        synchronized (this) {
+            for (DownloadItem item : items) {
+                Entry previous = this.removeQueued(item.getRemoteUrl());
+                if (null != previous && previous.item != item) {
+                    replaced.add(previous.item);
+                }
+
+                if (this.active.containsKey(item.getRemoteUrl())) {
+                    this.active.put(item.getRemoteUrl(), item);
+                    replacing.add(item);
+                    continue;
+                }
+
+                Entry entry = new Entry(item, item.getPriority(), this.sequence++);
+                this.queue.add(entry);
+                this.queued.put(item.getRemoteUrl(), entry);
+            }
+        }
+
+        // Replaced queued items never start, their callbacks get a final status
+        for (DownloadItem item : replaced) {
+            item.getMetrics().complete(DownloadMetrics.OUTCOME_REPLACED);
+            item.sendResult(Utils.STATUS_CANCELLED);
+        }
+
+        if (!replacing.isEmpty()) {
+            this.starter.start(replacing);
+        }
+
+        this.pump();
+
+        for (DownloadItem item : items) {
+            if (this.isQueued(item)) {
+                item.sendResult(Utils.STATUS_QUEUED);
+            }
+        }
+    }
+
+    /**
+     * Check if given item is waiting in the queue
+     *
+     * @param item Download item
+     * @return True if queued
+     */
+    private synchronized boolean isQueued(DownloadItem item) {
+        Entry entry = this.queued.get(item.getRemoteUrl());
+
+        return null != entry && entry.item == item;
+    }
+
+    /**
+     * Remove queued item for given URL
+     *
+     * @param remoteUrl Remote URL
+     * @return Removed item or null if there is no queued item for this URL
+     */
+    public synchronized DownloadItem remove(String remoteUrl) {
+        Entry entry = this.removeQueued(remoteUrl);
+
+        return null != entry ? entry.item : null;
+    }
+
+    /**
+     * Change priority of queued item
+     *
+     * @param remoteUrl Remote URL
+     * @param priority New priority
+     * @return False if there is no queued item for this URL
+     */
+    public synchronized boolean setPriority(String remoteUrl, int priority) {
+        Entry entry = this.removeQueued(remoteUrl);
+        if (null == entry) {
+            return false;
+        }
+
+        entry.item.setPriority(priority);
+
+        Entry updated = new Entry(entry.item, priority, entry.sequence);
+        this.queue.add(updated);
+        this.queued.put(remoteUrl, updated);
+
+        return true;
+    }
+
+    /**
+     * Free the slot of given item and start next queued items
+     *
+     * @param item Finished download item
+     */
+    public void finish(DownloadItem item) {
+        synchronized (this) {
+            if (this.active.get(item.getRemoteUrl()) != item) {
+                return;
+            }
+
+            this.active.remove(item.getRemoteUrl());
+        }
+
+        this.pump();
+    }
+
+    /**
+     * Get limit and number of queued and active items as JSON
+     *
+     * @return JSONObject
+     * @throws JSONException JSON error
+     */
+    public synchronized JSONObject toJSON() throws JSONException {
+        JSONObject obj = new JSONObject();
+        obj.put("maxActive", this.maxActive);
+        obj.put("queued", this.queued.size());
+        obj.put("active", this.active.size());
+
+        return obj;
+    }
+
+    /**
+     * Start queued items while there are free slots and the throttle is not busy
+     */
+    public void pump() {
+        List<DownloadItem> items = new ArrayList<DownloadItem>();
+
+        synchronized (this) {
+            while (!this.queue.isEmpty() && (this.maxActive == 0 || this.active.size() < this.maxActive)
+                    && !this.throttle.isBusy()) {
+                Entry entry = this.queue.poll();
+                if (entry.removed) {
+                    continue;
+                }
+
+                this.queued.remove(entry.item.getRemoteUrl());
+                this.active.put(entry.item.getRemoteUrl(), entry.item);
+                items.add(entry.item);
+            }
+        }
+
+        if (!items.isEmpty()) {
+            this.starter.start(items);
+        }
+    }
+
+    /**
+     * Remove queued entry for given URL, entry stays in the heap marked as removed
+     *
+     * @param remoteUrl Remote URL
+     * @return Removed entry or null
+     */
+    private Entry removeQueued(String remoteUrl) {
+        Entry entry = this.queued.remove(remoteUrl);
+        if (null != entry) {
+            entry.removed = true;
+        }
+
+        return entry;
+    }
+
+    /**
+     * Queue entry ordered by priority (highest first), then by queue order
+     */
+    private static class Entry implements Comparable<Entry> {
+        final DownloadItem item;
+        final int priority;
+        final long sequence;
+        boolean removed = false;
+
+        Entry(DownloadItem item, int priority, long sequence) {
+            this.item = item;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (this.priority != other.priority) {
+                return this.priority > other.priority ? -1 : 1;
+            }
+
+            return Long.compare(this.sequence, other.sequence);
+        }
+    }
+}
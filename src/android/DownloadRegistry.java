@@ -0,0 +1,66 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Download registry
+ * Active download items indexed by remote URL.
+ * Lookups are lock-free, replace and remove are atomic. Completions are resolved by download ID in the monitor.
+ */
+class DownloadRegistry {
+    private final ConcurrentHashMap<String, DownloadItem> byUrl = new ConcurrentHashMap<String, DownloadItem>();
+
+    /**
+     * Register given item, replacing item registered for the same URL
+     *
+     * @param item Download item
+     * @return Replaced item or null
+     */
+    public DownloadItem put(DownloadItem item) {
+        return this.byUrl.put(item.getRemoteUrl(), item);
+    }
+
+    /**
+     * Unregister given item
+     *
+     * @param item Download item
+     * @return True if given item was registered (and not replaced by another one)
+     */
+    public boolean remove(DownloadItem item) {
+        return this.byUrl.remove(item.getRemoteUrl(), item);
+    }
+
+    /**
+     * Find item by remote URL
+     *
+     * @param remoteUrl Remote URL
+     * @return Download item or null
+     */
+    public DownloadItem getByUrl(String remoteUrl) {
+        return this.byUrl.get(remoteUrl);
+    }
+
+    public Collection<DownloadItem> values() {
+        return this.byUrl.values();
+    }
+}
@@ -21,9 +21,16 @@ package eu.intrasoft.cordova.filesdownloader;
 
 import java.io.File;
 import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.cordova.CallbackContext;
 import org.apache.cordova.CordovaPlugin;
@@ -34,13 +41,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import android.app.Activity;
-import android.app.DownloadManager;
 import android.app.DownloadManager.Request;
-import android.content.BroadcastReceiver;
-import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
-import android.database.Cursor;
 import android.net.Uri;
 
 import android.os.Environment;
@@ -53,20 +54,46 @@ import android.content.DialogInterface;
  * Main Plugin class.
  * Manages many downloads with one interface.
  */
-public class FilesDownloader extends CordovaPlugin {
+public class FilesDownloader extends CordovaPlugin implements DownloadBackend.Listener {
     private static final String ACTION_DOWNLOAD = "download";
+    private static final String ACTION_DOWNLOAD_BATCH = "downloadBatch";
     private static final String ACTION_CANCEL = "cancel";
-    private static final long UPDATE_INTERVAL = 1000;
+    private static final String ACTION_SET_PRIORITY = "setPriority";
+    private static final String ACTION_CONFIGURE = "configure";
+    private static final String ACTION_GET_CACHE = "getCache";
+    private static final String ACTION_PURGE_CACHE = "purgeCache";
+    private static final String ACTION_GET_METRICS = "getMetrics";
+    private static final String ACTION_SUBSCRIBE_PROGRESS = "subscribeProgress";
+    private static final String ACTION_UNSUBSCRIBE_PROGRESS = "unsubscribeProgress";
 
     private Activity cordovaActivity;
-    private DownloadManager downloadManager;
-    private BroadcastReceiver downloadReceiver = null;
-    private HashMap<String, DownloadItem> items = new HashMap<String, DownloadItem>();
+    private DownloadManagerBackend downloadManagerBackend;
+    private HttpBackend httpBackend;
+    private ContentCache cache;
+    private ValidatorStore validators;
+    private final DownloadRegistry items = new DownloadRegistry();
+    private final Set<DownloadItem> restoring = Collections.newSetFromMap(new ConcurrentHashMap<DownloadItem, Boolean>());
+    private final PostProcessor postProcessor = new PostProcessor(() -> this.queue.pump());
+    private final DownloadQueue queue = new DownloadQueue(this::startDownloads, postProcessor::isFull);
+    private final MetricsCollector metrics = new MetricsCollector();
+    private final ProgressChannel progressChannel = new ProgressChannel(this::getChannelItems);
 
     @Override
     protected void pluginInitialize() {
         cordovaActivity = this.cordova.getActivity();
-        downloadManager = (DownloadManager) cordovaActivity.getSystemService(Context.DOWNLOAD_SERVICE);
+        downloadManagerBackend = new DownloadManagerBackend(cordovaActivity, this);
+        httpBackend = new HttpBackend(cordovaActivity, cordova.getThreadPool(), this);
+        cache = new ContentCache(cordovaActivity);
+        validators = new ValidatorStore(cordovaActivity);
+    }
+
+    @Override
+    public void onDestroy() {
+        downloadManagerBackend.shutdown();
+        httpBackend.shutdown();
+        progressChannel.unsubscribe();
+        postProcessor.shutdown();
+        super.onDestroy();
     }
 
     @Override
@@ -88,6 +115,22 @@ public class FilesDownloader extends CordovaPlugin {
                 return true;
             }
 
+            if (ACTION_DOWNLOAD_BATCH.equals(action)) {
+                cordova.getThreadPool().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            downloadBatch(args, callbackContext);
+                        } catch (JSONException e) {
+                            e.printStackTrace();
+                            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.JSON_EXCEPTION));
+                        }
+                    }
+                });
+
+                return true;
+            }
+
             if (ACTION_CANCEL.equals(action)) {
                 cordova.getThreadPool().execute(new Runnable() {
                     @Override
@@ -104,6 +147,89 @@ public class FilesDownloader extends CordovaPlugin {
                 return true;
             }
 
+            if (ACTION_SET_PRIORITY.equals(action)) {
+                setPriority(args, callbackContext);
+
+                return true;
+            }
+
+            if (ACTION_CONFIGURE.equals(action)) {
+                cordova.getThreadPool().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            configure(args, callbackContext);
+                        } catch (JSONException e) {
+                            e.printStackTrace();
+                            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.JSON_EXCEPTION));
+                        }
+                    }
+                });
+
+                return true;
+            }
+
+            if (ACTION_GET_CACHE.equals(action)) {
+                cordova.getThreadPool().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            getCache(args, callbackContext);
+                        } catch (JSONException e) {
+                            e.printStackTrace();
+                            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.JSON_EXCEPTION));
+                        }
+                    }
+                });
+
+                return true;
+            }
+
+            if (ACTION_PURGE_CACHE.equals(action)) {
+                cordova.getThreadPool().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            purgeCache(args, callbackContext);
+                        } catch (JSONException e) {
+                            e.printStackTrace();
+                            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.JSON_EXCEPTION));
+                        }
+                    }
+                });
+
+                return true;
+            }
+
+            if (ACTION_SUBSCRIBE_PROGRESS.equals(action)) {
+                subscribeProgress(args, callbackContext);
+
+                return true;
+            }
+
+            if (ACTION_UNSUBSCRIBE_PROGRESS.equals(action)) {
+                progressChannel.unsubscribe();
+                callbackContext.success();
+
+                return true;
+            }
+
+            if (ACTION_GET_METRICS.equals(action)) {
+                cordova.getThreadPool().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            getMetrics(args, callbackContext);
+                        } catch (JSONException e) {
+                            e.printStackTrace();
+                            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.JSON_EXCEPTION));
+                        }
+                    }
+                });
+
+                return true;
+            }
+
             return false;
         } catch (Exception e) {
             System.err.println("Exception: " + e.getMessage());
@@ -113,7 +239,7 @@ public class FilesDownloader extends CordovaPlugin {
     }
 
     /**
-     * Register new URL in download manager
+     * Register new URL in download backend
      *
      * @param args Arguments
      * @param callbackContext Callback context
@@ -121,70 +247,183 @@ public class FilesDownloader extends CordovaPlugin {
      */
     private void download(JSONArray args, CallbackContext callbackContext) throws JSONException {
         try {
-            JSONObject arg_object = args.getJSONObject(0);
-            final String remoteUrl = arg_object.getString("remoteUrl");
-            String destinationFileUrl = arg_object.getString("destinationFileUrl");
-            String title = arg_object.has("title") ? arg_object.getString("title") : "";
-            boolean extract = arg_object.has("extract") && arg_object.getBoolean("extract");
-
-            if (items.containsKey(remoteUrl)) {
-                DownloadItem item = items.get(remoteUrl);
-                item.stopMonitoring();
-                items.remove(remoteUrl);
-            }
+            DownloadItem item = this.getDownloadItem(args.getJSONObject(0), callbackContext);
+            item.getMetrics().setCollector(metrics);
 
-            DownloadItem item = Utils.getDownloadItem(remoteUrl, destinationFileUrl, callbackContext);
-            item.setTitle(title);
-            item.setExtract(extract);
+            if (!this.restoreDownload(item) && !this.checkUnchanged(item) && this.checkSpace(item)) {
+                queue.enqueue(Collections.singletonList(item));
+            }
+        } catch (Exception e) {
+            System.err.println("Exception: " + e.getMessage());
+            callbackContext.error(Utils.getErrorJSON("Could not start download for given URL.", 0, e.getMessage()));
+        }
+    }
 
-            DownloadItemInfo info = this.findDownloadInfoByUri(item.getRemoteUrl());
+    /**
+     * Register many URLs in download backends with one shared callback
+     *
+     * @param args Arguments
+     * @param callbackContext Callback context
+     * @throws JSONException JSON error
+     */
+    private void downloadBatch(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        try {
+            JSONArray files = args.getJSONArray(0);
+            DownloadBatch batch = new DownloadBatch(callbackContext);
+            List<DownloadItem> newItems = new ArrayList<DownloadItem>(files.length());
+            List<DownloadItem> batchItems = new ArrayList<DownloadItem>(files.length());
+            List<DownloadItem> probedItems = new ArrayList<DownloadItem>();
+            Set<String> uris = new HashSet<String>();
 
-            if (null == info) {
-                File temporaryFile = new File(Uri.parse(item.getTemporaryFileUrl()).getPath());
-                if (temporaryFile.exists()) {
-                    if (!temporaryFile.delete()) {
-                        throw new DownloadException(100, "Could not delete existing temporary file.");
-                    }
+            // All items are read first, an invalid item rejects the batch before any item is tracked
+            for (int i = 0; i < files.length(); i++) {
+                DownloadItem item = this.getDownloadItem(files.getJSONObject(i), callbackContext);
+                if (uris.add(item.getRemoteUrl())) {
+                    newItems.add(item);
                 }
+            }
 
-                DownloadManager.Request request = item.getNewRequest();
-                item.setId(this.downloadManager.enqueue(request));
-                info = this.findDownloadInfoByUri(item.getRemoteUrl());
-            } else {
-                item.setId(info.getId());
+            for (DownloadItem item : newItems) {
+                item.getMetrics().setCollector(metrics);
+                batch.add(item);
+                if ((item.isCache() && cache.contains(item.getRemoteUrl()))
+                        || item.isConditional() || (item.isCheckSpace() && item.getExpectedSize() < 0)) {
+                    probedItems.add(item);
+                } else if (this.checkSpace(item)) {
+                    batchItems.add(item);
+                }
             }
 
-            items.put(item.getRemoteUrl(), item);
+            queue.enqueue(batchItems);
 
-            item.startMonitoring(new TimerTask() {
-                @Override
-                public void run() {
-                    DownloadItemInfo downloadInfo = findDownloadInfoById(item.getId());
-                    if (null != downloadInfo) {
-                        String status = Utils.getStatus(downloadInfo.getStatus());
-                        if (Utils.STATUS_FINISHED.equals(status) && item.isExtract()) {
-                            status = Utils.STATUS_EXTRACTING;
+            // Remote files are checked in parallel, cached and unchanged items and items without space do not take a queue slot
+            for (DownloadItem item : probedItems) {
+                cordova.getThreadPool().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!restoreDownload(item) && !checkUnchanged(item) && checkSpace(item)) {
+                            queue.enqueue(Collections.singletonList(item));
                         }
-
-                        item.sendResult(status, downloadInfo.getDownloadProgress());
-                    } else {
-                        checkDownloadItem(item, DownloadManager.STATUS_FAILED);
                     }
-                }
-            }, UPDATE_INTERVAL);
-
-            if (info != null) {
-                checkDownloadItem(item, info.getStatus());
+                });
             }
-
-            checkDownloadReceiver();
-        } catch (DownloadException e) {
-            System.err.println("Exception: " + e.getMessage());
-            callbackContext.error(Utils.getErrorJSON("Could not start download for given URL.", e.getCode(), e.getMessage()));
         } catch (Exception e) {
             System.err.println("Exception: " + e.getMessage());
-            callbackContext.error(Utils.getErrorJSON("Could not start download for given URL.", 0, e.getMessage()));
+            callbackContext.error(Utils.getErrorJSON("Could not start downloads for given URLs.", 0, e.getMessage()));
+        }
+    }
+
+    /**
+     * Start transfers for given items in their backends
+     *
+     * @param downloadItems Download items
+     */
+    private void startDownloads(List<DownloadItem> downloadItems) {
+        Map<DownloadBackend, List<DownloadItem>> backendItems = new HashMap<DownloadBackend, List<DownloadItem>>();
+
+        for (DownloadItem item : downloadItems) {
+            item.getMetrics().mark(DownloadMetrics.STARTED);
+            DownloadBackend backend = this.getBackend(item);
+            if (!backendItems.containsKey(backend)) {
+                backendItems.put(backend, new ArrayList<DownloadItem>());
+            }
+            backendItems.get(backend).add(item);
+        }
+
+        for (Map.Entry<DownloadBackend, List<DownloadItem>> entry : backendItems.entrySet()) {
+            try {
+                entry.getKey().start(entry.getValue());
+            } catch (Exception e) {
+                for (DownloadItem item : entry.getValue()) {
+                    this.onFailure(item, new DownloadException(0, e.getMessage()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Get new download item for given arguments
+     *
+     * @param arg_object Download arguments
+     * @param callbackContext Callback context
+     * @return DownloadItem
+     * @throws JSONException JSON error
+     */
+    private DownloadItem getDownloadItem(JSONObject arg_object, CallbackContext callbackContext) throws JSONException {
+        final String remoteUrl = arg_object.getString("remoteUrl");
+        String destinationFileUrl = arg_object.getString("destinationFileUrl");
+        String title = arg_object.has("title") ? arg_object.getString("title") : "";
+        // Extract is either true for ZIP archives or the archive format
+        Object extractOption = arg_object.opt("extract");
+        boolean extract = extractOption instanceof String || Boolean.TRUE.equals(extractOption);
+        String archiveFormat = extractOption instanceof String ? (String) extractOption : Utils.FORMAT_ZIP;
+        if (extract && !Utils.isArchiveFormat(archiveFormat)) {
+            throw new JSONException("Unknown archive format: " + archiveFormat);
+        }
+        // Only ZIP archives can be read by ranges
+        boolean delta = extract && (Utils.FORMAT_ZIP.equals(archiveFormat) || Utils.FORMAT_AUTO.equals(archiveFormat))
+                && arg_object.has("delta") && arg_object.getBoolean("delta");
+        // Delta updates fall back to streaming extraction when the archive can not be read by ranges
+        boolean streaming = delta || (extract && arg_object.has("streaming") && arg_object.getBoolean("streaming"));
+        int segments = arg_object.has("segments") ? arg_object.getInt("segments") : 1;
+        String backend = arg_object.has("backend") ? arg_object.getString("backend") : DownloadBackend.DOWNLOAD_MANAGER;
+
+        if (!DownloadBackend.DOWNLOAD_MANAGER.equals(backend) && !DownloadBackend.HTTP.equals(backend)) {
+            throw new JSONException("Unknown backend: " + backend);
+        }
+
+        DownloadItem item = Utils.getDownloadItem(remoteUrl, destinationFileUrl, callbackContext);
+        item.setTitle(title);
+        item.setExtract(extract);
+        item.setArchiveFormat(archiveFormat);
+        item.setStreaming(streaming);
+        item.setDelta(delta);
+        item.setIncremental(arg_object.has("incremental") && arg_object.getBoolean("incremental"));
+        item.setSegments(streaming ? 1 : segments);
+        item.setBackend(streaming || item.getSegments() > 1 ? DownloadBackend.HTTP : backend);
+        // In-process downloads can not write to the public downloads folder
+        item.setStageInDestination(DownloadBackend.HTTP.equals(item.getBackend())
+                || (arg_object.has("stageInDestination") && arg_object.getBoolean("stageInDestination")));
+        item.setPriority(arg_object.has("priority") ? arg_object.getInt("priority") : 0);
+        item.setCache(arg_object.has("cache") && arg_object.getBoolean("cache"));
+        item.setConditional(arg_object.has("conditional") && arg_object.getBoolean("conditional"));
+        item.setExpectedSize(arg_object.optLong("expectedSize", -1));
+        item.setExpectedExtractedSize(arg_object.optLong("expectedExtractedSize", -1));
+        item.setCheckSpace(arg_object.has("checkSpace") && arg_object.getBoolean("checkSpace"));
+
+        if (arg_object.has("expectedHash")) {
+            JSONObject expectedHash = arg_object.getJSONObject("expectedHash");
+            String algorithm = expectedHash.optString("algorithm", "SHA-256");
+            try {
+                Utils.getMessageDigest(algorithm);
+            } catch (IOException e) {
+                throw new JSONException(e.getMessage());
+            }
+            item.setExpectedHash(algorithm, expectedHash.getString("digest"));
+        }
+        item.setExtractThreads(arg_object.has("extractThreads") ? arg_object.getInt("extractThreads") : ZipExtractor.getDefaultParallelism());
+        if (arg_object.has("progressInterval")) {
+            item.setProgressInterval(arg_object.getLong("progressInterval"));
         }
+        if (arg_object.has("progressStep")) {
+            item.setProgressStep(arg_object.getInt("progressStep"));
+        }
+        if (arg_object.has("bufferSize")) {
+            item.setBufferSize(arg_object.getInt("bufferSize"));
+        }
+        item.setChannel(progressChannel);
+
+        return item;
+    }
+
+    /**
+     * Get backend for given item
+     *
+     * @param item Download item
+     * @return DownloadBackend
+     */
+    private DownloadBackend getBackend(DownloadItem item) {
+        return DownloadBackend.HTTP.equals(item.getBackend()) ? httpBackend : downloadManagerBackend;
     }
 
     /**
@@ -199,12 +438,13 @@ public class FilesDownloader extends CordovaPlugin {
             JSONObject arg_object = args.getJSONObject(0);
             final String remoteUrl = arg_object.getString("remoteUrl");
 
-            DownloadItemInfo info = this.findDownloadInfoByUri(remoteUrl);
-            if (null == info) {
-                throw new DownloadException(104, "Given URL is not registered in DownloadManager.");
+            DownloadItem queuedItem = queue.remove(remoteUrl);
+            if (null != queuedItem) {
+                queuedItem.sendResult(Utils.STATUS_CANCELLED);
+                return;
             }
 
-            DownloadItem item = this.getDownloadItemById(info.getId());
+            DownloadItem item = items.getByUrl(remoteUrl);
             if (null == item) {
                 throw new DownloadException(104, "There is no active download for given URL.");
             }
@@ -221,89 +461,115 @@ public class FilesDownloader extends CordovaPlugin {
     }
 
     /**
-     * Find download item by id
+     * Change priority of queued download
      *
-     * @param id Download ID
-     * @return Download item
+     * @param args Arguments
+     * @param callbackContext Callback context
+     * @throws JSONException JSON error
      */
-    private DownloadItem getDownloadItemById(long id) {
-        for (DownloadItem item : items.values()) {
-            if (id == item.getId()) {
-                return item;
-            }
-        }
+    private void setPriority(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        JSONObject arg_object = args.getJSONObject(0);
 
-        return null;
+        if (queue.setPriority(arg_object.getString("remoteUrl"), arg_object.getInt("priority"))) {
+            callbackContext.success();
+        } else {
+            callbackContext.error(Utils.getErrorJSON("Could not change priority for given URL.", 104, "There is no queued download for given URL."));
+        }
     }
 
     /**
-     * Get download info object for given cursor
+     * Change plugin settings
      *
-     * @param cursor Cursor with download result
-     * @return DownloadItemInfo
+     * @param args Arguments
+     * @param callbackContext Callback context
+     * @throws JSONException JSON error
      */
-    private DownloadItemInfo getDownloadInfo(Cursor cursor) {
-        int colId = cursor.getColumnIndex(DownloadManager.COLUMN_ID);
-        int colUri = cursor.getColumnIndex(DownloadManager.COLUMN_URI);
-        int colStatus = cursor.getColumnIndex(DownloadManager.COLUMN_STATUS);
-        int colReason = cursor.getColumnIndex(DownloadManager.COLUMN_REASON);
-        int colBytesDownloaded = cursor.getColumnIndex(DownloadManager.COLUMN_BYTES_DOWNLOADED_SO_FAR);
-        int colBytesTotal = cursor.getColumnIndex(DownloadManager.COLUMN_TOTAL_SIZE_BYTES);
+    private void configure(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        JSONObject arg_object = args.getJSONObject(0);
+
+        if (arg_object.has("maxActiveDownloads")) {
+            queue.setMaxActive(arg_object.getInt("maxActiveDownloads"));
+        }
 
-        DownloadItemInfo info = new DownloadItemInfo(cursor.getLong(colId), cursor.getString(colUri));
-        info.setStatus(cursor.getInt(colStatus));
-        info.setReason(cursor.getInt(colReason));
-        info.setBytesDownloaded(cursor.getLong(colBytesDownloaded));
-        info.setBytesTotal(cursor.getLong(colBytesTotal));
+        if (arg_object.has("cacheSize")) {
+            cache.setMaxSize(arg_object.getLong("cacheSize"));
+        }
+
+        postProcessor.configure(
+                arg_object.optInt("maxPostProcessingJobs", 0),
+                arg_object.optInt("maxExtractThreads", 0),
+                arg_object.optInt("postProcessingQueueSize", 0)
+        );
 
-        return info;
+        callbackContext.success();
     }
 
     /**
-     * Find download info for given URI
+     * Send cache contents
      *
-     * @param uri Download URI
-     * @return DownloadItemInfo
+     * @param args Arguments
+     * @param callbackContext Callback context
+     * @throws JSONException JSON error
      */
-    private DownloadItemInfo findDownloadInfoByUri(String uri) {
-        DownloadManager.Query query = new DownloadManager.Query();
-        query.setFilterByStatus(
-                    DownloadManager.STATUS_PENDING |
-                    DownloadManager.STATUS_RUNNING |
-                    DownloadManager.STATUS_PAUSED |
-                    DownloadManager.STATUS_SUCCESSFUL
-        );
+    private void getCache(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        callbackContext.success(cache.toJSON());
+    }
 
-        try (Cursor cursor = this.downloadManager.query(query)) {
-            int colUri = cursor.getColumnIndex(DownloadManager.COLUMN_URI);
+    /**
+     * Remove cached copy for given URL, or all cached copies
+     *
+     * @param args Arguments
+     * @param callbackContext Callback context
+     * @throws JSONException JSON error
+     */
+    private void purgeCache(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        JSONObject arg_object = args.optJSONObject(0);
 
-            for (cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
-                if (uri.equals(cursor.getString(colUri))) {
-                    return this.getDownloadInfo(cursor);
-                }
-            }
+        if (null != arg_object && arg_object.has("remoteUrl")) {
+            cache.remove(arg_object.getString("remoteUrl"));
+        } else {
+            cache.clear();
         }
 
-        return null;
+        callbackContext.success(cache.toJSON());
     }
 
     /**
-     * Find download info for given ID
+     * Send progress snapshots of all active downloads to given callback
      *
-     * @param id Download ID
-     * @return DownloadItemInfo
+     * @param args Arguments
+     * @param callbackContext Callback context
+     * @throws JSONException JSON error
      */
-    private DownloadItemInfo findDownloadInfoById(long id) {
-        DownloadManager.Query query = new DownloadManager.Query();
-        query.setFilterById(id);
+    private void subscribeProgress(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        JSONObject arg_object = args.optJSONObject(0);
+        long interval = ProgressChannel.DEFAULT_INTERVAL;
+        boolean exclusive = false;
 
-        try (Cursor cursor = this.downloadManager.query(query)) {
-            if (cursor.moveToFirst()) {
-                return this.getDownloadInfo(cursor);
-            }
+        if (null != arg_object) {
+            interval = arg_object.optLong("interval", interval);
+            exclusive = arg_object.optBoolean("exclusive", false);
         }
 
-        return null;
+        progressChannel.subscribe(callbackContext, interval, exclusive);
+    }
+
+    /**
+     * Send timing metrics of active and recent downloads with their aggregate
+     *
+     * @param args Arguments
+     * @param callbackContext Callback context
+     * @throws JSONException JSON error
+     */
+    private void getMetrics(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        JSONObject arg_object = args.optJSONObject(0);
+        String remoteUrl = null != arg_object && arg_object.has("remoteUrl") ? arg_object.getString("remoteUrl") : null;
+
+        JSONObject obj = metrics.toJSON(remoteUrl);
+        obj.put("queue", queue.toJSON());
+        obj.put("postProcessing", postProcessor.toJSON());
+
+        callbackContext.success(obj);
     }
 
     /**
@@ -312,28 +578,96 @@ public class FilesDownloader extends CordovaPlugin {
      * @param downloadItem Download item to flush
      */
     private void flushDownload(DownloadItem downloadItem) {
-        downloadItem.stopMonitoring();
-        downloadManager.remove(downloadItem.getId());
-        items.remove(downloadItem.getRemoteUrl());
-        checkDownloadReceiver();
+        if (items.remove(downloadItem)) {
+            this.getBackend(downloadItem).remove(downloadItem);
+        } else {
+            this.getBackend(downloadItem).release(downloadItem);
+        }
+
+        queue.finish(downloadItem);
+    }
+
+    @Override
+    public void onStarted(DownloadItem item) {
+        DownloadItem previous = items.put(item);
+        if (null != previous) {
+            previous.getMetrics().complete(DownloadMetrics.OUTCOME_REPLACED);
+            this.getBackend(previous).release(previous);
+        }
+    }
+
+    @Override
+    public void onProgress(DownloadItem item, String status, int progress) {
+        item.sendResult(status, progress);
+    }
+
+    @Override
+    public void onSuccess(DownloadItem item) {
+        // Completion may be reported more than once
+        if (!item.markCompleted()) {
+            return;
+        }
+
+        item.getMetrics().mark(DownloadMetrics.DOWNLOADED);
+
+        if (item.isStreaming()) {
+            item.sendResult(Utils.STATUS_FINISHED);
+            this.storeValidators(item);
+            this.flushDownload(item);
+            return;
+        }
+
+        this.finalizeDownload(item);
+    }
+
+    @Override
+    public void onCancelled(DownloadItem item) {
+        if (!item.markCompleted()) {
+            return;
+        }
+
+        this.flushDownload(item);
+        item.sendResult(Utils.STATUS_CANCELLED);
+    }
+
+    @Override
+    public void onFailure(DownloadItem item, DownloadException error) {
+        if (!item.markCompleted()) {
+            return;
+        }
+
+        System.err.println("Exception: " + error.getMessage());
+        item.sendResult(Utils.STATUS_FAILED);
+        item.sendError("This download could not be processed.", error.getCode(), error);
+
+        // Keep partial data, so the next download of this URL can be resumed
+        items.remove(item);
+        this.getBackend(item).release(item);
+        queue.finish(item);
     }
 
     /**
-     * Check if given download has been finished
+     * Move downloaded file into place and extract it if requested.
+     * Runs on the post processor, held back while its queue is full.
      *
      * @param downloadItem Download item
-     * @param status Download status
      */
-    private void checkDownloadItem(DownloadItem downloadItem, int status) {
-        if (status == DownloadManager.STATUS_SUCCESSFUL) {
-            cordova.getThreadPool().execute(new Runnable() {
-                public void run() {
-                    try {
-                        downloadItem.sendResult(Utils.STATUS_FINALIZING);
+    private void finalizeDownload(DownloadItem downloadItem) {
+        postProcessor.execute(new PostProcessor.Job() {
+            public void run() {
+                try {
+                    downloadItem.getMetrics().mark(DownloadMetrics.FINALIZE_START);
+                    downloadItem.sendResult(Utils.STATUS_FINALIZING);
 
-                        File temporaryFile = new File(Uri.parse(downloadItem.getTemporaryFileUrl()).getPath());
-                        File destinationFile = new File(Uri.parse(downloadItem.getDestinationFileUrl()).getPath());
+                    File temporaryFile = new File(Uri.parse(downloadItem.getTemporaryFileUrl()).getPath());
+                    File destinationFile = new File(Uri.parse(downloadItem.getDestinationFileUrl()).getPath());
 
+                    File verifiedFile = temporaryFile;
+                    if (null != downloadItem.getExpectedHash()) {
+                        verifiedFile = verifyDownload(downloadItem, temporaryFile, destinationFile);
+                    }
+
+                    try {
                         if (destinationFile.exists()) {
                             if (!destinationFile.delete()) {
                                 throw new DownloadException(101, "Could not remove destination file.");
@@ -341,94 +675,365 @@ public class FilesDownloader extends CordovaPlugin {
                         }
 
                         try {
-                            Utils.copyFile(temporaryFile, destinationFile);
+                            Utils.moveFile(verifiedFile, destinationFile);
                         } catch (IOException e) {
                             throw new DownloadException(102, "Could not save downloaded file.");
                         }
+                    } catch (DownloadException e) {
+                        if (verifiedFile != temporaryFile) {
+                            verifiedFile.delete();
+                        }
+                        throw e;
+                    }
 
-                        temporaryFile.delete();
-
-                        if (downloadItem.isExtract()) {
-                            downloadItem.sendResult(Utils.STATUS_EXTRACTING);
-                            boolean res = Utils.extractZip(
-                                    destinationFile.getParent(),
-                                    destinationFile.getName(),
-                                    percentage -> {
-                                        downloadItem.sendResult(Utils.STATUS_EXTRACTING, percentage);
-                                    }
-                            );
+                    downloadItem.getMetrics().mark(DownloadMetrics.FINALIZE_END);
 
-                            if (!res) {
-                                throw new DownloadException(103, "Could not extract downloaded file.");
-                            }
+                    if (downloadItem.isExtract()) {
+                        extractDownload(downloadItem, destinationFile);
+                    }
 
-                            destinationFile.delete();
+                    downloadItem.sendResult(Utils.STATUS_FINISHED);
+                    storeValidators(downloadItem);
 
-                            downloadItem.sendResult(Utils.STATUS_FINISHED);
-                        } else {
-                            downloadItem.sendResult(Utils.STATUS_FINISHED);
-                        }
-                    } catch (DownloadException e) {
-                        System.err.println("Exception: " + e.getMessage());
-                        downloadItem.sendResult(Utils.STATUS_FAILED);
-                        downloadItem.sendError("This download could not be processed.", e.getCode(), e);
-                    } catch (Exception e) {
-                        System.err.println("Exception: " + e.getMessage());
-                        downloadItem.sendResult(Utils.STATUS_FAILED);
-                        downloadItem.sendError("This download could not be processed.", 0, e);
-                    } finally {
-                        flushDownload(downloadItem);
+                    if (downloadItem.isCache()) {
+                        storeDownload(downloadItem, destinationFile);
+                    } else if (downloadItem.isExtract()) {
+                        destinationFile.delete();
                     }
+                } catch (DownloadException e) {
+                    System.err.println("Exception: " + e.getMessage());
+                    downloadItem.sendResult(Utils.STATUS_FAILED);
+                    downloadItem.sendError("This download could not be processed.", e.getCode(), e);
+                } catch (Exception e) {
+                    System.err.println("Exception: " + e.getMessage());
+                    downloadItem.sendResult(Utils.STATUS_FAILED);
+                    downloadItem.sendError("This download could not be processed.", 0, e);
+                } finally {
+                    flushDownload(downloadItem);
                 }
-            });
-        } else if (status == DownloadManager.STATUS_FAILED) {
-            this.flushDownload(downloadItem);
-            downloadItem.sendResult(Utils.STATUS_CANCELLED);
-        }
+            }
+
+            public void reject(Exception error) {
+                downloadItem.sendResult(Utils.STATUS_FAILED);
+                downloadItem.sendError("This download could not be processed.", 0, error);
+                flushDownload(downloadItem);
+            }
+        });
     }
 
     /**
-     * Get new broadcast receiver
+     * Check hash of downloaded file, the file is removed when it does not match
      *
-     * @return BroadcastReceiver
+     * @param downloadItem Download item
+     * @param temporaryFile Downloaded file
+     * @param destinationFile Destination file
+     * @return Verified file, the temporary file or its copy next to the destination
+     * @throws DownloadException Hash does not match
      */
-    private BroadcastReceiver getNewDownloadReceiver() {
-        return new BroadcastReceiver() {
-            public void onReceive(Context context, Intent intent) {
-                DownloadManager downloadManager = (DownloadManager) context.getSystemService(Context.DOWNLOAD_SERVICE);
+    private File verifyDownload(DownloadItem downloadItem, File temporaryFile, File destinationFile) throws DownloadException {
+        String hash = downloadItem.getComputedHash();
+        File file = temporaryFile;
+
+        // Files written by the download manager or by many connections have not been hashed yet.
+        // They are moved next to the destination first, a copy across volumes is hashed while it is written.
+        if (null == hash) {
+            file = new File(destinationFile.getPath() + ".verify");
+            try {
+                MessageDigest digest = Utils.getMessageDigest(downloadItem.getHashAlgorithm());
+                if (!Utils.moveFile(temporaryFile, file, digest)) {
+                    Utils.updateDigest(digest, file, file.length());
+                }
+                hash = Utils.toHex(digest.digest());
+            } catch (IOException e) {
+                throw new DownloadException(102, "Could not read downloaded file.");
+            }
+        }
+
+        try {
+            downloadItem.verifyHash(hash);
+        } catch (DownloadException e) {
+            file.delete();
+            throw e;
+        }
+
+        return file;
+    }
 
-                long downloadId = intent.getLongExtra(DownloadManager.EXTRA_DOWNLOAD_ID, -1L);
-                if (downloadId == -1) return;
+    /**
+     * Extract downloaded archive next to it
+     *
+     * @param downloadItem Download item
+     * @param archive Downloaded archive
+     * @throws DownloadException Extraction error
+     */
+    private void extractDownload(DownloadItem downloadItem, File archive) throws DownloadException {
+        downloadItem.getMetrics().mark(DownloadMetrics.EXTRACT_START);
+        downloadItem.sendResult(Utils.STATUS_EXTRACTING);
+        boolean res = Utils.extractArchive(
+                archive.getParent(),
+                archive.getName(),
+                downloadItem.getArchiveFormat(),
+                postProcessor.getExtractThreads(downloadItem),
+                downloadItem.isIncremental() ? ZipManifest.getFile(archive) : null,
+                downloadItem.getExtractStats(),
+                percentage -> {
+                    downloadItem.sendResult(Utils.STATUS_EXTRACTING, percentage);
+                }
+        );
+        downloadItem.getMetrics().mark(DownloadMetrics.EXTRACT_END);
 
-                DownloadItem downloadItem = getDownloadItemById(downloadId);
-                if (null == downloadItem) return;
+        if (!res) {
+            throw new DownloadException(103, "Could not extract downloaded file.");
+        }
+    }
 
-                DownloadItemInfo info = findDownloadInfoById(downloadId);
-                int status = null != info ? info.getStatus() : DownloadManager.STATUS_FAILED;
+    /**
+     * Keep downloaded file in the content cache. Extracted archives are moved, other files are copied.
+     *
+     * @param downloadItem Download item
+     * @param file Downloaded file
+     */
+    private void storeDownload(DownloadItem downloadItem, File file) {
+        String validator = downloadItem.getValidator();
+        if (null == validator && null != downloadItem.getRemoteInfo()) {
+            validator = downloadItem.getRemoteInfo().getValidator();
+        }
 
-                checkDownloadItem(downloadItem, status);
+        try {
+            cache.store(downloadItem.getRemoteUrl(), validator, file, downloadItem.isExtract());
+        } catch (IOException e) {
+            System.err.println("Exception: " + e.getMessage());
+        } finally {
+            if (downloadItem.isExtract()) {
+                file.delete();
             }
-        };
+        }
     }
 
     /**
-     * Register / unregister broadcast receiver
+     * Serve given item from the content cache, if the cached copy is still current
+     *
+     * @param downloadItem Download item
+     * @return False if there is no current cached copy and the file has to be downloaded
      */
-    private void checkDownloadReceiver() {
-        if (!this.items.isEmpty()) {
-            if (null == this.downloadReceiver) {
-                this.downloadReceiver = this.getNewDownloadReceiver();
+    private boolean restoreDownload(DownloadItem downloadItem) {
+        if (!downloadItem.isCache() || !cache.contains(downloadItem.getRemoteUrl()) || !this.checkCached(downloadItem)) {
+            return false;
+        }
+
+        try {
+            File destinationFile = new File(Uri.parse(downloadItem.getDestinationFileUrl()).getPath());
+
+            if (destinationFile.exists()) {
+                if (!destinationFile.delete()) {
+                    throw new DownloadException(101, "Could not remove destination file.");
+                }
             }
 
-            this.cordovaActivity.registerReceiver(this.downloadReceiver, new IntentFilter(DownloadManager.ACTION_DOWNLOAD_COMPLETE));
-        } else {
-            if (null != this.downloadReceiver) {
+            try {
+                if (!cache.restore(downloadItem.getRemoteUrl(), destinationFile)) {
+                    return false;
+                }
+            } catch (IOException e) {
+                throw new DownloadException(102, "Could not save cached file.");
+            }
+
+            if (downloadItem.isExtract()) {
+                this.extractRestored(downloadItem, destinationFile);
+            } else {
+                downloadItem.sendResult(Utils.STATUS_FINISHED);
+            }
+        } catch (DownloadException e) {
+            System.err.println("Exception: " + e.getMessage());
+            downloadItem.sendResult(Utils.STATUS_FAILED);
+            downloadItem.sendError("This download could not be processed.", e.getCode(), e);
+        }
+
+        return true;
+    }
+
+    /**
+     * Get items reported by the progress channel: active downloads and cache hits being extracted
+     *
+     * @return Download items
+     */
+    private Collection<DownloadItem> getChannelItems() {
+        List<DownloadItem> list = new ArrayList<DownloadItem>(items.values());
+        list.addAll(restoring);
+
+        return list;
+    }
+
+    /**
+     * Extract archive restored from the content cache and remove it.
+     * Runs on the post processor, held back while its queue is full.
+     *
+     * @param downloadItem Download item
+     * @param archive Restored archive
+     */
+    private void extractRestored(DownloadItem downloadItem, File archive) {
+        // Not registered as download, listed to the progress channel until extracted
+        restoring.add(downloadItem);
+
+        postProcessor.execute(new PostProcessor.Job() {
+            public void run() {
                 try {
-                    this.cordovaActivity.unregisterReceiver(this.downloadReceiver);
-                } catch (IllegalArgumentException e) {
-                    // do nothing
+                    extractDownload(downloadItem, archive);
+                    downloadItem.sendResult(Utils.STATUS_FINISHED);
+                } catch (DownloadException e) {
+                    System.err.println("Exception: " + e.getMessage());
+                    downloadItem.sendResult(Utils.STATUS_FAILED);
+                    downloadItem.sendError("This download could not be processed.", e.getCode(), e);
+                } catch (Exception e) {
+                    System.err.println("Exception: " + e.getMessage());
+                    downloadItem.sendResult(Utils.STATUS_FAILED);
+                    downloadItem.sendError("This download could not be processed.", 0, e);
+                } finally {
+                    archive.delete();
+                    restoring.remove(downloadItem);
                 }
             }
+
+            public void reject(Exception error) {
+                downloadItem.sendResult(Utils.STATUS_FAILED);
+                downloadItem.sendError("This download could not be processed.", 0, error);
+                archive.delete();
+                restoring.remove(downloadItem);
+            }
+        });
+    }
+
+    /**
+     * Check with a conditional request if the remote file has changed since it was cached.
+     * Cached copies without validator can not be checked, they are only served to downloads which are not conditional.
+     *
+     * @param downloadItem Download item
+     * @return True if the cached copy can be served
+     */
+    private boolean checkCached(DownloadItem downloadItem) {
+        String remoteUrl = downloadItem.getRemoteUrl();
+        String validator = cache.getValidator(remoteUrl);
+        if (null == validator) {
+            return !downloadItem.isConditional();
+        }
+
+        // Validator is a strong ETag or a Last-Modified date
+        boolean etag = validator.startsWith("\"");
+
+        try {
+            RemoteFileInfo info = RemoteFileInfo.probe(remoteUrl, etag ? validator : null, etag ? null : validator);
+            if (info.isNotModified() || validator.equals(info.getValidator())) {
+                return true;
+            }
+
+            // Cached copy is replaced by the download
+            cache.remove(remoteUrl);
+        } catch (IOException e) {
+            System.err.println("Exception: " + e.getMessage());
+        }
+
+        return false;
+    }
+
+    /**
+     * Check with a conditional request if the remote file has changed since the last download
+     *
+     * @param downloadItem Download item
+     * @return True if the file is unchanged and nothing has to be downloaded
+     */
+    private boolean checkUnchanged(DownloadItem downloadItem) {
+        if (!downloadItem.isConditional()) {
+            return false;
+        }
+
+        String remoteUrl = downloadItem.getRemoteUrl();
+        File destinationFile = new File(Uri.parse(downloadItem.getDestinationFileUrl()).getPath());
+        // Extracted archives are not kept, so only their validators can be checked
+        JSONObject stored = downloadItem.isExtract() || destinationFile.exists() ? validators.get(remoteUrl) : null;
+
+        try {
+            RemoteFileInfo info = RemoteFileInfo.probe(
+                    remoteUrl,
+                    null != stored ? stored.optString("etag", null) : null,
+                    null != stored ? stored.optString("lastModified", null) : null
+            );
+
+            if (null != stored && info.isNotModified()) {
+                downloadItem.sendResult(Utils.STATUS_UNCHANGED);
+                return true;
+            }
+
+            downloadItem.setRemoteInfo(info);
+            // Remote file has changed, the local copy must not be reported as unchanged if the download fails
+            validators.remove(remoteUrl);
+        } catch (IOException e) {
+            // Validators are kept, the next conditional request checks again
+            System.err.println("Exception: " + e.getMessage());
+        }
+
+        return false;
+    }
+
+    /**
+     * Check free space for the download before it is queued. The size is taken from the expectedSize option,
+     * the conditional request or a request for the remote file size.
+     *
+     * @param downloadItem Download item
+     * @return False if there is not enough space, the item has failed then
+     */
+    private boolean checkSpace(DownloadItem downloadItem) {
+        // Delta updates fetch only changed entries
+        if (downloadItem.isDelta() || (!downloadItem.isCheckSpace() && downloadItem.getExpectedSize() < 0)) {
+            return true;
+        }
+
+        long size = downloadItem.getExpectedSize();
+        if (size < 0 && null != downloadItem.getRemoteInfo()) {
+            size = downloadItem.getRemoteInfo().getContentLength();
+        }
+        if (size < 0) {
+            try {
+                size = RemoteFileInfo.probe(downloadItem.getRemoteUrl()).getContentLength();
+            } catch (IOException e) {
+                System.err.println("Exception: " + e.getMessage());
+            }
+        }
+
+        // Unknown size, the transfer fails by itself if space runs out
+        if (size < 0) {
+            return true;
+        }
+
+        try {
+            DiskSpace.check(downloadItem, size);
+        } catch (DownloadException e) {
+            System.err.println("Exception: " + e.getMessage());
+            downloadItem.sendResult(Utils.STATUS_FAILED);
+            downloadItem.sendError("This download could not be processed.", e.getCode(), e);
+            return false;
+        } catch (IOException e) {
+            System.err.println("Exception: " + e.getMessage());
         }
+
+        return true;
+    }
+
+    /**
+     * Store validators of finished conditional download
+     *
+     * @param downloadItem Download item
+     */
+    private void storeValidators(DownloadItem downloadItem) {
+        RemoteFileInfo info = downloadItem.getRemoteInfo();
+        if (!downloadItem.isConditional() || null == info) {
+            return;
+        }
+
+        // Remote file has changed between the check and the transfer
+        if (null != downloadItem.getValidator() && !downloadItem.getValidator().equals(info.getValidator())) {
+            return;
+        }
+
+        validators.put(downloadItem.getRemoteUrl(), info.getEtag(), info.getLastModified());
     }
-}
\ No newline at end of file
+}
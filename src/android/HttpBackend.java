@@ -0,0 +1,99 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+import android.content.Context;
+import android.net.Uri;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Download backend transferring files in-process over HTTP.
+ * Items get negative IDs so they never collide with DownloadManager IDs.
+ * Temporary files of failed downloads are kept, so they can be resumed.
+ */
+class HttpBackend implements DownloadBackend {
+    private final ExecutorService executor;
+    private final Listener listener;
+    private final ResumeStore resumeStore;
+    private final ConcurrentHashMap<DownloadItem, HttpDownload> downloads = new ConcurrentHashMap<DownloadItem, HttpDownload>();
+    private final ConcurrentHashMap<String, HttpDownload> running = new ConcurrentHashMap<String, HttpDownload>();
+    private final AtomicLong nextId = new AtomicLong(-1);
+
+    HttpBackend(Context context, ExecutorService executor, Listener listener) {
+        this.executor = executor;
+        this.listener = listener;
+        this.resumeStore = new ResumeStore(context);
+    }
+
+    @Override
+    public void start(Collection<DownloadItem> items) {
+        for (DownloadItem item : items) {
+            item.setId(this.nextId.getAndDecrement());
+            this.listener.onStarted(item);
+
+            // Released download of the same URL may still be writing the temporary file
+            String remoteUrl = item.getRemoteUrl();
+            HttpDownload download = this.running.compute(remoteUrl,
+                    (url, previous) -> new HttpDownload(item, this.listener, this.resumeStore, previous));
+            this.downloads.put(item, download);
+            this.executor.execute(() -> {
+                try {
+                    download.run();
+                } finally {
+                    this.running.remove(remoteUrl, download);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void release(DownloadItem item) {
+        HttpDownload download = this.downloads.remove(item);
+        if (null != download) {
+            download.cancel();
+        }
+    }
+
+    @Override
+    public void remove(DownloadItem item) {
+        this.release(item);
+        this.resumeStore.remove(item.getRemoteUrl());
+
+        if (!item.isStreaming()) {
+            try {
+                new File(Uri.parse(item.getTemporaryFileUrl()).getPath()).delete();
+            } catch (Exception e) {
+                System.err.println("Exception: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        for (DownloadItem item : this.downloads.keySet()) {
+            this.release(item);
+        }
+    }
+}
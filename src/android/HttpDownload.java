@@ -0,0 +1,517 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+import android.net.Uri;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * HTTP download
+ * Transfers one remote file in-process, either into the temporary file
+ * or (in streaming mode) straight into the extracted archive entries.
+ */
+class HttpDownload implements Runnable {
+    /**
+     * Smallest segment worth its own connection
+     */
+    private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+
+    /**
+     * Persist resume state after this many bytes
+     */
+    private static final long RESUME_SAVE_INTERVAL = 1024 * 1024;
+
+    private final DownloadItem item;
+    private final DownloadBackend.Listener listener;
+    private final ResumeStore resumeStore;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private volatile HttpDownload previous;
+    private volatile boolean cancelled = false;
+    private volatile HttpURLConnection connection;
+    private volatile SegmentedDownload segmented;
+    private volatile ZipDelta delta;
+    private ZipManifest previousManifest;
+    private volatile boolean transportFailed = false;
+    private int percentage = -1;
+
+    /**
+     * @param item Download item
+     * @param listener Download listener
+     * @param resumeStore Resume state of temporary files
+     * @param previous Download of the same URL this one replaces, null if none
+     */
+    HttpDownload(DownloadItem item, DownloadBackend.Listener listener, ResumeStore resumeStore, HttpDownload previous) {
+        this.item = item;
+        this.listener = listener;
+        this.resumeStore = resumeStore;
+        this.previous = previous;
+    }
+
+    /**
+     * Wait until this download has stopped writing
+     *
+     * @throws InterruptedException Interrupted while waiting
+     */
+    public void join() throws InterruptedException {
+        this.stopped.await();
+    }
+
+    /**
+     * Stop this download, listener is not notified
+     */
+    public void cancel() {
+        this.cancelled = true;
+
+        HttpURLConnection connection = this.connection;
+        if (null != connection) {
+            connection.disconnect();
+        }
+
+        SegmentedDownload segmented = this.segmented;
+        if (null != segmented) {
+            segmented.cancel();
+        }
+
+        ZipDelta delta = this.delta;
+        if (null != delta) {
+            delta.cancel();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            // Replaced download shares the temporary file, continue from what it saved
+            HttpDownload previous = this.previous;
+            if (null != previous) {
+                this.previous = null;
+                previous.join();
+            }
+
+            this.listener.onProgress(this.item, Utils.STATUS_NEW, 0);
+            this.download();
+
+            if (!this.cancelled) {
+                this.listener.onSuccess(this.item);
+            }
+        } catch (DownloadException e) {
+            if (!this.cancelled) {
+                this.listener.onFailure(this.item, e);
+            }
+        } catch (Exception e) {
+            if (!this.cancelled) {
+                this.listener.onFailure(this.item, new DownloadException(105, "Could not download file: " + e.getMessage()));
+            }
+        } finally {
+            this.stopped.countDown();
+        }
+    }
+
+    /**
+     * Open connection and transfer the response body
+     *
+     * @throws DownloadException Download error
+     * @throws IOException IO error
+     */
+    private void download() throws DownloadException, IOException {
+        if (this.item.isDelta()) {
+            File destinationFile = new File(Uri.parse(this.item.getDestinationFileUrl()).getPath());
+            File manifestFile = ZipManifest.getFile(destinationFile);
+
+            this.delta = new ZipDelta(
+                    this.item.getRemoteUrl(),
+                    destinationFile.getParentFile(),
+                    manifestFile,
+                    this.item.getBufferSize(),
+                    this::reportDelta
+            );
+            this.item.getMetrics().mark(DownloadMetrics.EXTRACT_START);
+            if (this.delta.run()) {
+                this.item.getMetrics().mark(DownloadMetrics.EXTRACT_END);
+                if (!this.cancelled) {
+                    this.listener.onProgress(this.item, Utils.STATUS_EXTRACTING, 100);
+                }
+                return;
+            }
+
+            // Archive is streamed whole, the manifest is written again while extracting
+            this.previousManifest = ZipManifest.load(manifestFile);
+            manifestFile.delete();
+        }
+
+        if (!this.item.isStreaming() && this.item.getSegments() > 1) {
+            RemoteFileInfo remote = RemoteFileInfo.probe(this.item.getRemoteUrl());
+            int segments = (int) Math.min(this.item.getSegments(), remote.getContentLength() / MIN_SEGMENT_SIZE);
+
+            if (remote.isAcceptRanges() && segments > 1 && !this.cancelled) {
+                this.segmented = new SegmentedDownload(
+                        this.item.getRemoteUrl(),
+                        new File(Uri.parse(this.item.getTemporaryFileUrl()).getPath()),
+                        remote.getContentLength(),
+                        remote.getValidator(),
+                        segments,
+                        this.item.getBufferSize(),
+                        this::report
+                );
+                this.resumeStore.remove(this.item.getRemoteUrl());
+                this.item.setValidator(remote.getValidator());
+                this.segmented.run();
+                return;
+            }
+        }
+
+        File temporaryFile = new File(Uri.parse(this.item.getTemporaryFileUrl()).getPath());
+        ResumeStore.State state = this.item.isStreaming() ? null : this.resumeStore.get(this.item.getRemoteUrl());
+        long offset = 0;
+
+        if (null != state && temporaryFile.exists()) {
+            offset = Math.min(temporaryFile.length(), state.getBytes());
+        }
+
+        this.connection = Utils.openConnection(this.item.getRemoteUrl());
+        if (offset > 0) {
+            this.connection.setRequestProperty("Range", "bytes=" + offset + "-");
+            this.connection.setRequestProperty("If-Range", state.getValidator());
+        }
+
+        try {
+            int responseCode = this.connection.getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_PARTIAL) {
+                if (offset <= 0 || RemoteFileInfo.getRangeStart(this.connection.getHeaderField("Content-Range")) != offset) {
+                    throw new DownloadException(106, "Server did not return requested range (HTTP " + responseCode + ").");
+                }
+            } else if (responseCode >= 200 && responseCode < 300) {
+                // Remote file has changed or range is not supported, start over
+                offset = 0;
+            } else {
+                throw new DownloadException(105, "Server responded with HTTP " + responseCode + ".");
+            }
+
+            long length = Utils.getContentLength(this.connection);
+            long total = length >= 0 ? offset + length : -1;
+            String validator = RemoteFileInfo.getValidator(
+                    this.connection.getHeaderField("ETag"),
+                    this.connection.getHeaderField("Last-Modified")
+            );
+            this.item.setValidator(validator);
+
+            InputStream in = new ProgressInputStream(this.connection.getInputStream(), offset, total);
+            try {
+                if (this.item.isStreaming()) {
+                    MessageDigest digest = null;
+                    if (null != this.item.getExpectedHash()) {
+                        digest = Utils.getMessageDigest(this.item.getHashAlgorithm());
+                        in = new DigestInputStream(in, digest);
+                    }
+
+                    try {
+                        this.extract(in);
+                    } catch (IOException e) {
+                        // Connection errors surface through the archive reader too
+                        if (this.transportFailed || this.cancelled) {
+                            throw e;
+                        }
+                        throw new DownloadException(103, "Could not extract downloaded file: " + e.getMessage());
+                    }
+
+                    if (null != digest && !this.cancelled) {
+                        // Archive may end with data the ZIP reader does not consume
+                        byte[] buffer = new byte[this.item.getBufferSize()];
+                        while (in.read(buffer) != -1) {
+                        }
+
+                        this.item.verifyHash(Utils.toHex(digest.digest()));
+                    }
+
+                    this.listener.onProgress(this.item, Utils.STATUS_EXTRACTING, 100);
+                } else {
+                    this.save(in, temporaryFile, offset, validator, total);
+                }
+            } finally {
+                in.close();
+            }
+        } finally {
+            this.connection.disconnect();
+        }
+    }
+
+    /**
+     * Save response body into the temporary file.
+     * Progress is persisted while writing, so the file can be continued after a failure.
+     * The remaining size is preallocated, unused space is released when done.
+     *
+     * @param in Response body
+     * @param temporaryFile Temporary file
+     * @param offset Position to write response body at, file is truncated to it
+     * @param validator ETag or Last-Modified value of the response, null if download can not be resumed
+     * @param total Remote file size or -1 if unknown
+     * @throws IOException IO error
+     */
+    private void save(InputStream in, File temporaryFile, long offset, String validator, long total) throws IOException {
+        String remoteUrl = this.item.getRemoteUrl();
+        MessageDigest digest = null;
+        byte[] buffer = new byte[this.item.getBufferSize()];
+        long written = offset;
+        long saved = offset;
+        boolean completed = false;
+        int count;
+
+        if (null != this.item.getExpectedHash()) {
+            // Hash is computed while writing, only the resumed part has to be read again
+            digest = Utils.getMessageDigest(this.item.getHashAlgorithm());
+            if (offset > 0) {
+                Utils.updateDigest(digest, temporaryFile, offset);
+            }
+        }
+
+        try (RandomAccessFile out = new RandomAccessFile(temporaryFile, "rw")) {
+            out.setLength(offset);
+            if (total > offset) {
+                DiskSpace.preallocate(out, offset, total - offset);
+            }
+            out.seek(offset);
+
+            while (!this.cancelled && (count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+                written += count;
+                if (null != digest) {
+                    digest.update(buffer, 0, count);
+                }
+
+                if (null != validator && written - saved >= RESUME_SAVE_INTERVAL) {
+                    this.resumeStore.put(remoteUrl, new ResumeStore.State(validator, written, total));
+                    saved = written;
+                }
+            }
+
+            completed = !this.cancelled;
+            if (completed) {
+                out.setLength(written);
+            }
+            if (completed && null != digest) {
+                this.item.setComputedHash(Utils.toHex(digest.digest()));
+            }
+        } finally {
+            if (completed || null == validator) {
+                this.resumeStore.remove(remoteUrl);
+            } else {
+                this.resumeStore.put(remoteUrl, new ResumeStore.State(validator, written, total));
+            }
+        }
+    }
+
+    /**
+     * Extract response body as archive next to the destination file
+     *
+     * @param in Response body
+     * @throws IOException IO error
+     */
+    private void extract(InputStream in) throws IOException {
+        String format = this.item.getArchiveFormat();
+        in = new BufferedInputStream(in, this.item.getBufferSize());
+
+        if (Utils.FORMAT_AUTO.equals(format) && Utils.isZip(in)) {
+            format = Utils.FORMAT_ZIP;
+        }
+
+        this.item.getMetrics().mark(DownloadMetrics.EXTRACT_START);
+        if (Utils.FORMAT_ZIP.equals(format)) {
+            this.extractZip(in);
+        } else {
+            new TarExtractor(this.item.getBufferSize()).extract(
+                    in,
+                    format,
+                    new File(Uri.parse(this.item.getDestinationFileUrl()).getPath()),
+                    this.item.getExtractStats()
+            );
+        }
+        this.item.getMetrics().mark(DownloadMetrics.EXTRACT_END);
+    }
+
+    /**
+     * Extract response body as ZIP archive next to the destination file
+     *
+     * @param in Buffered response body
+     * @throws IOException IO error
+     */
+    private void extractZip(InputStream in) throws IOException {
+        File destinationDir = new File(Uri.parse(this.item.getDestinationFileUrl()).getPath()).getParentFile();
+        String destinationPath = destinationDir.getCanonicalPath() + File.separator;
+        Set<File> dirs = new HashSet<File>();
+        TransferStats stats = this.item.getExtractStats();
+        byte[] buffer = new byte[this.item.getBufferSize()];
+        long bytes = 0;
+        long entries = 0;
+        int count;
+        ZipManifest manifest = this.item.isDelta() ? new ZipManifest() : null;
+
+        ZipInputStream zis = new ZipInputStream(in);
+        ZipEntry entry;
+        while (!this.cancelled && (entry = zis.getNextEntry()) != null) {
+            File target = ZipExtractor.getTarget(destinationDir, destinationPath, entry.getName());
+
+            if (entry.isDirectory()) {
+                ZipExtractor.mkdirs(target, dirs);
+                continue;
+            }
+
+            ZipExtractor.mkdirs(target.getParentFile(), dirs);
+
+            try (OutputStream out = new FileOutputStream(target)) {
+                while ((count = zis.read(buffer)) != -1) {
+                    out.write(buffer, 0, count);
+                    bytes += count;
+                }
+            }
+
+            zis.closeEntry();
+            if (null != manifest) {
+                manifest.put(entry.getName(), entry.getCrc(), entry.getSize(), target.lastModified());
+            }
+            stats.update(bytes, -1);
+            stats.updateEntries(++entries, -1);
+        }
+
+        if (null != manifest && !this.cancelled) {
+            // Entries removed from the archive since the last update
+            if (null != this.previousManifest) {
+                this.previousManifest.deleteRemoved(manifest, destinationDir);
+            }
+            manifest.save(ZipManifest.getFile(new File(Uri.parse(this.item.getDestinationFileUrl()).getPath())));
+        }
+    }
+
+    /**
+     * Update stats and report progress if percentage has changed
+     *
+     * @param processed Bytes downloaded
+     * @param total Total bytes or -1 if unknown
+     */
+    private synchronized void report(long processed, long total) {
+        this.item.getDownloadStats().update(processed, total);
+        if (processed > 0) {
+            this.item.getMetrics().mark(DownloadMetrics.FIRST_BYTE);
+        }
+
+        int current = total > 0 ? (int) Math.ceil((double) processed / (double) total * 100) : 0;
+        if (current != this.percentage) {
+            this.percentage = current;
+            this.listener.onProgress(this.item, Utils.STATUS_DOWNLOADING, current);
+        }
+    }
+
+    /**
+     * Update stats and report extraction progress of a delta update
+     *
+     * @param processed Bytes fetched
+     * @param total Bytes to fetch
+     * @param entries Entries updated
+     * @param entriesTotal Entries to update
+     */
+    private synchronized void reportDelta(long processed, long total, long entries, long entriesTotal) {
+        this.item.getDownloadStats().update(processed, total);
+        this.item.getExtractStats().update(processed, total);
+        if (processed > 0) {
+            this.item.getMetrics().mark(DownloadMetrics.FIRST_BYTE);
+        }
+        this.item.getExtractStats().updateEntries(entries, entriesTotal);
+
+        int current = total > 0 ? (int) Math.ceil((double) processed / (double) total * 100) : 0;
+        if (current != this.percentage) {
+            this.percentage = current;
+            this.listener.onProgress(this.item, Utils.STATUS_EXTRACTING, current);
+        }
+    }
+
+    /**
+     * Input stream reporting downloaded bytes as progress and flagging connection errors
+     */
+    private class ProgressInputStream extends FilterInputStream {
+        private final long total;
+        private long processed;
+
+        ProgressInputStream(InputStream in, long offset, long total) {
+            super(in);
+            this.processed = offset;
+            this.total = total;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b;
+            try {
+                b = super.read();
+            } catch (IOException e) {
+                transportFailed = true;
+                throw e;
+            }
+
+            return this.update(b == -1 ? -1 : 1) == -1 ? -1 : b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count;
+            try {
+                count = super.read(b, off, len);
+            } catch (IOException e) {
+                transportFailed = true;
+                throw e;
+            }
+
+            return this.update(count);
+        }
+
+        /**
+         * Count bytes read, a body ending before its announced length is a connection error
+         *
+         * @param count Bytes read or -1 at end of stream
+         * @return Given count
+         * @throws IOException Connection closed early
+         */
+        private int update(int count) throws IOException {
+            if (count > 0) {
+                this.processed += count;
+                report(this.processed, this.total);
+            } else if (count == -1 && this.total >= 0 && this.processed < this.total && !cancelled) {
+                transportFailed = true;
+                throw new IOException("Connection closed after " + this.processed + " of " + this.total + " bytes.");
+            }
+
+            return count;
+        }
+    }
+}
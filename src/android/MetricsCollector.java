@@ -0,0 +1,181 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Metrics collector
+ * Tracks metrics of active items, keeps the most recent completed ones and aggregates all completed items.
+ */
+class MetricsCollector {
+    private static final int MAX_RECENT = 50;
+
+    private final Set<DownloadMetrics> active = new LinkedHashSet<DownloadMetrics>();
+    private final ArrayDeque<DownloadMetrics> recent = new ArrayDeque<DownloadMetrics>();
+    private final Map<String, Long> outcomes = new HashMap<String, Long>();
+    private final long[] durationCount = new long[DownloadMetrics.DURATIONS.length];
+    private final long[] durationSum = new long[DownloadMetrics.DURATIONS.length];
+    private final long[] durationMax = new long[DownloadMetrics.DURATIONS.length];
+    private long completed = 0;
+    private long bytesDownloaded = 0;
+    private long bytesExtracted = 0;
+    private long entriesExtracted = 0;
+    private long bytesSkipped = 0;
+    private long entriesSkipped = 0;
+
+    /**
+     * Track metrics of a new item
+     *
+     * @param metrics Item metrics
+     */
+    public synchronized void add(DownloadMetrics metrics) {
+        if (!metrics.isCompleted()) {
+            this.active.add(metrics);
+        }
+    }
+
+    /**
+     * Add metrics of a completed item to the aggregate
+     *
+     * @param metrics Item metrics
+     */
+    public synchronized void record(DownloadMetrics metrics) {
+        this.active.remove(metrics);
+
+        this.recent.addLast(metrics);
+        if (this.recent.size() > MAX_RECENT) {
+            this.recent.removeFirst();
+        }
+
+        this.completed++;
+        Long count = this.outcomes.get(metrics.getOutcome());
+        this.outcomes.put(metrics.getOutcome(), null != count ? count + 1 : 1);
+
+        for (int i = 0; i < DownloadMetrics.DURATIONS.length; i++) {
+            long duration = metrics.getDuration(i);
+            if (duration >= 0) {
+                this.durationCount[i]++;
+                this.durationSum[i] += duration;
+                this.durationMax[i] = Math.max(this.durationMax[i], duration);
+            }
+        }
+
+        this.bytesDownloaded += metrics.getDownloadStats().getBytes();
+        this.bytesExtracted += metrics.getExtractStats().getBytes();
+        this.entriesExtracted += metrics.getExtractStats().getEntries();
+        this.bytesSkipped += metrics.getExtractStats().getBytesSkipped();
+        this.entriesSkipped += metrics.getExtractStats().getEntriesSkipped();
+    }
+
+    /**
+     * Get metrics as JSON
+     *
+     * @param remoteUrl Only include items of this URL, null for all
+     * @return JSONObject with active items, recent completed items and the aggregate
+     * @throws JSONException JSON error
+     */
+    public JSONObject toJSON(String remoteUrl) throws JSONException {
+        List<DownloadMetrics> active;
+        List<DownloadMetrics> recent;
+
+        synchronized (this) {
+            active = new ArrayList<DownloadMetrics>(this.active);
+            recent = new ArrayList<DownloadMetrics>(this.recent);
+        }
+
+        JSONObject obj = new JSONObject();
+        obj.put("active", this.toJSON(active, remoteUrl));
+        obj.put("recent", this.toJSON(recent, remoteUrl));
+        obj.put("aggregate", this.getAggregateJSON());
+
+        return obj;
+    }
+
+    /**
+     * Get JSON array of given metrics
+     *
+     * @param metrics Item metrics
+     * @param remoteUrl Only include items of this URL, null for all
+     * @return JSONArray
+     * @throws JSONException JSON error
+     */
+    private JSONArray toJSON(List<DownloadMetrics> metrics, String remoteUrl) throws JSONException {
+        JSONArray items = new JSONArray();
+        for (DownloadMetrics item : metrics) {
+            if (null == remoteUrl || remoteUrl.equals(item.getRemoteUrl())) {
+                items.put(item.toJSON());
+            }
+        }
+
+        return items;
+    }
+
+    /**
+     * Get aggregate of all completed items as JSON
+     *
+     * @return JSONObject
+     * @throws JSONException JSON error
+     */
+    private synchronized JSONObject getAggregateJSON() throws JSONException {
+        JSONObject obj = new JSONObject();
+        obj.put("completed", this.completed);
+        obj.put("active", this.active.size());
+
+        JSONObject outcomes = new JSONObject();
+        for (Map.Entry<String, Long> entry : this.outcomes.entrySet()) {
+            outcomes.put(entry.getKey(), entry.getValue());
+        }
+        obj.put("outcomes", outcomes);
+
+        JSONObject durations = new JSONObject();
+        for (int i = 0; i < DownloadMetrics.DURATIONS.length; i++) {
+            if (this.durationCount[i] == 0) {
+                continue;
+            }
+
+            JSONObject duration = new JSONObject();
+            duration.put("count", this.durationCount[i]);
+            duration.put("mean", this.durationSum[i] / this.durationCount[i]);
+            duration.put("max", this.durationMax[i]);
+            duration.put("total", this.durationSum[i]);
+            durations.put(DownloadMetrics.DURATIONS[i], duration);
+        }
+        obj.put("durations", durations);
+
+        obj.put("bytesDownloaded", this.bytesDownloaded);
+        obj.put("bytesExtracted", this.bytesExtracted);
+        obj.put("entriesExtracted", this.entriesExtracted);
+        obj.put("bytesSkipped", this.bytesSkipped);
+        obj.put("entriesSkipped", this.entriesSkipped);
+
+        return obj;
+    }
+}
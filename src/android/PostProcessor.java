@@ -0,0 +1,260 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Post processor
+ * Runs finalize and extract jobs on own threads, apart from the shared Cordova pool.
+ * The number of concurrent jobs and of extraction threads is limited. While the queue is full, further jobs
+ * are held back in a pending list without blocking their submitters, and no further downloads should start.
+ */
+class PostProcessor {
+    interface Job extends Runnable {
+        /**
+         * Called instead of run when the job could not be queued
+         *
+         * @param error Rejection
+         */
+        void reject(Exception error);
+    }
+
+    interface Listener {
+        /**
+         * Called when a job has started and there is room in the queue
+         */
+        void onAvailable();
+    }
+
+    static final int DEFAULT_MAX_JOBS = 2;
+    static final int DEFAULT_QUEUE_SIZE = 32;
+
+    private final ThreadPoolExecutor executor;
+    private final Listener listener;
+    private int maxJobs = DEFAULT_MAX_JOBS;
+    private int maxExtractThreads = ZipExtractor.getDefaultParallelism();
+    private int queueSize = DEFAULT_QUEUE_SIZE;
+    private int queued = 0;
+    private int running = 0;
+    private int maxQueued = 0;
+    private long completed = 0;
+    private long deferred = 0;
+    private final ArrayDeque<Job> pending = new ArrayDeque<Job>();
+
+    PostProcessor(Listener listener) {
+        final AtomicInteger count = new AtomicInteger();
+
+        this.listener = listener;
+        this.executor = new ThreadPoolExecutor(
+                DEFAULT_MAX_JOBS,
+                DEFAULT_MAX_JOBS,
+                30,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        return new Thread(runnable, "FilesDownloader-post-" + count.incrementAndGet());
+                    }
+                }
+        );
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Set limits
+     *
+     * @param maxJobs Max concurrent jobs, disk bound finalize and extract work
+     * @param maxExtractThreads Max extraction threads of one job, 0 to keep current value
+     * @param queueSize Max waiting jobs, 0 to keep current value
+     */
+    public void configure(int maxJobs, int maxExtractThreads, int queueSize) {
+        synchronized (this) {
+            if (maxJobs > 0 && maxJobs != this.maxJobs) {
+                // Keep core size <= max size in between
+                if (maxJobs > this.maxJobs) {
+                    this.executor.setMaximumPoolSize(maxJobs);
+                    this.executor.setCorePoolSize(maxJobs);
+                } else {
+                    this.executor.setCorePoolSize(maxJobs);
+                    this.executor.setMaximumPoolSize(maxJobs);
+                }
+                this.maxJobs = maxJobs;
+            }
+
+            if (maxExtractThreads > 0) {
+                this.maxExtractThreads = maxExtractThreads;
+            }
+
+            if (queueSize > 0) {
+                this.queueSize = queueSize;
+            }
+        }
+
+        // A larger queue takes pending jobs
+        this.drain();
+        this.notifyAvailable();
+    }
+
+    /**
+     * Get number of extraction threads for given item
+     *
+     * @param item Download item
+     * @return Threads
+     */
+    public synchronized int getExtractThreads(DownloadItem item) {
+        return Math.max(1, Math.min(item.getExtractThreads(), this.maxExtractThreads));
+    }
+
+    /**
+     * Check if queued and held back jobs fill the queue
+     *
+     * @return True if full
+     */
+    public synchronized boolean isFull() {
+        return this.queued + this.pending.size() >= this.queueSize;
+    }
+
+    /**
+     * Queue given job. While the queue is full, the job is held back until a queued job starts.
+     *
+     * @param job Job
+     */
+    public void execute(final Job job) {
+        synchronized (this) {
+            if (this.queued >= this.queueSize) {
+                this.deferred++;
+            }
+
+            // Jobs are queued in order of submission
+            this.pending.addLast(job);
+        }
+
+        this.drain();
+    }
+
+    /**
+     * Queue pending jobs while there is room in the queue
+     */
+    private void drain() {
+        List<Job> jobs = new ArrayList<Job>();
+
+        synchronized (this) {
+            while (!this.pending.isEmpty() && this.queued < this.queueSize) {
+                jobs.add(this.pending.pollFirst());
+                this.queued++;
+            }
+            this.maxQueued = Math.max(this.maxQueued, this.queued);
+        }
+
+        for (Job job : jobs) {
+            try {
+                this.submit(job);
+            } catch (RejectedExecutionException e) {
+                System.err.println("Exception: " + e.getMessage());
+                job.reject(e);
+            }
+        }
+    }
+
+    /**
+     * Hand given job to the executor, keeping the counters
+     *
+     * @param job Job
+     */
+    private void submit(final Job job) {
+        try {
+            this.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (PostProcessor.this) {
+                        queued--;
+                        running++;
+                    }
+                    drain();
+                    notifyAvailable();
+
+                    try {
+                        job.run();
+                    } finally {
+                        synchronized (PostProcessor.this) {
+                            running--;
+                            completed++;
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                this.queued--;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Notify listener if there is room in the queue
+     */
+    private void notifyAvailable() {
+        if (!this.isFull()) {
+            this.listener.onAvailable();
+        }
+    }
+
+    /**
+     * Stop threads, queued jobs are still run
+     */
+    public void shutdown() {
+        this.executor.shutdown();
+    }
+
+    /**
+     * Get limits and job counters as JSON
+     *
+     * @return JSONObject
+     * @throws JSONException JSON error
+     */
+    public synchronized JSONObject toJSON() throws JSONException {
+        JSONObject obj = new JSONObject();
+        obj.put("maxJobs", this.maxJobs);
+        obj.put("maxExtractThreads", this.maxExtractThreads);
+        obj.put("queueSize", this.queueSize);
+        obj.put("queued", this.queued);
+        obj.put("pending", this.pending.size());
+        obj.put("running", this.running);
+        obj.put("maxQueued", this.maxQueued);
+        obj.put("completed", this.completed);
+        obj.put("deferred", this.deferred);
+
+        return obj;
+    }
+}
@@ -0,0 +1,231 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Progress channel
+ * Sends one columnar snapshot per tick with all active items whose state has changed since the last snapshot.
+ */
+class ProgressChannel {
+    interface Source {
+        /**
+         * Get active items
+         *
+         * @return Download items
+         */
+        Collection<DownloadItem> getItems();
+    }
+
+    static final long DEFAULT_INTERVAL = 250;
+
+    /**
+     * Last sent state of one item
+     */
+    private static class Slot {
+        final int index;
+        String status;
+        int progress;
+        long bytes;
+        long entries;
+
+        Slot(int index) {
+            this.index = index;
+        }
+    }
+
+    private final Source source;
+    private final Map<DownloadItem, Slot> slots = new HashMap<DownloadItem, Slot>();
+    private CallbackContext callback;
+    private volatile boolean exclusive;
+    private Timer timer;
+    private int nextIndex = 0;
+
+    ProgressChannel(Source source) {
+        this.source = source;
+    }
+
+    /**
+     * Check if per item progress results are replaced by this channel
+     *
+     * @return True while an exclusive subscription is active
+     */
+    public boolean isExclusive() {
+        return exclusive;
+    }
+
+    /**
+     * Send snapshots to given callback, replacing the current subscriber
+     *
+     * @param callback Callback context
+     * @param interval Milliseconds between two snapshots
+     * @param exclusive Suppress per item progress results, status changes are still sent
+     */
+    public synchronized void subscribe(CallbackContext callback, long interval, boolean exclusive) {
+        this.unsubscribe();
+
+        this.callback = callback;
+        this.exclusive = exclusive;
+        this.timer = new Timer("FilesDownloader-progress", true);
+        this.timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }, 0, Math.max(1, interval));
+    }
+
+    /**
+     * Stop sending snapshots and close the subscriber callback
+     */
+    public synchronized void unsubscribe() {
+        if (null == this.callback) {
+            return;
+        }
+
+        this.timer.cancel();
+        this.timer = null;
+        this.exclusive = false;
+        this.slots.clear();
+        this.callback.sendPluginResult(new PluginResult(PluginResult.Status.OK));
+        this.callback = null;
+    }
+
+    /**
+     * Send snapshot of changed items, nothing is sent if no item has changed
+     */
+    private synchronized void tick() {
+        if (null == this.callback) {
+            return;
+        }
+
+        try {
+            JSONObject snapshot = this.getSnapshot();
+            if (null == snapshot) {
+                return;
+            }
+
+            PluginResult result = new PluginResult(PluginResult.Status.OK, snapshot);
+            result.setKeepCallback(true);
+            this.callback.sendPluginResult(result);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Get columnar snapshot of changed items. Items are identified by a slot index,
+     * the URL of a slot is sent once, slots of items which are not active anymore are listed as removed.
+     *
+     * @return JSONObject or null if nothing has changed
+     * @throws JSONException JSON error
+     */
+    private JSONObject getSnapshot() throws JSONException {
+        JSONArray index = new JSONArray();
+        JSONArray status = new JSONArray();
+        JSONArray progress = new JSONArray();
+        JSONArray bytesDownloaded = new JSONArray();
+        JSONArray bytesTotal = new JSONArray();
+        JSONArray speed = new JSONArray();
+        JSONArray entriesExtracted = new JSONArray();
+        JSONArray entriesTotal = new JSONArray();
+        JSONObject urls = new JSONObject();
+        JSONArray removed = new JSONArray();
+
+        Map<DownloadItem, Slot> active = new HashMap<DownloadItem, Slot>();
+        for (DownloadItem item : this.source.getItems()) {
+            String itemStatus = item.getStatus();
+            if (null == itemStatus) {
+                continue;
+            }
+
+            Slot slot = this.slots.get(item);
+            if (null == slot) {
+                slot = new Slot(this.nextIndex++);
+                urls.put(String.valueOf(slot.index), item.getRemoteUrl());
+            }
+            active.put(item, slot);
+
+            TransferStats download = item.getDownloadStats();
+            TransferStats extract = item.getExtractStats();
+            int itemProgress = item.getProgress();
+            long bytes = download.getBytes();
+            long entries = extract.getEntries();
+
+            if (itemStatus.equals(slot.status) && itemProgress == slot.progress
+                    && bytes == slot.bytes && entries == slot.entries) {
+                continue;
+            }
+
+            slot.status = itemStatus;
+            slot.progress = itemProgress;
+            slot.bytes = bytes;
+            slot.entries = entries;
+
+            index.put(slot.index);
+            status.put(itemStatus);
+            progress.put(itemProgress);
+            bytesDownloaded.put(bytes);
+            bytesTotal.put(download.getBytesTotal());
+            speed.put(download.getRate());
+            entriesExtracted.put(entries);
+            entriesTotal.put(extract.getEntriesTotal());
+        }
+
+        for (Iterator<Map.Entry<DownloadItem, Slot>> it = this.slots.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<DownloadItem, Slot> entry = it.next();
+            if (!active.containsKey(entry.getKey())) {
+                removed.put(entry.getValue().index);
+                it.remove();
+            }
+        }
+        this.slots.putAll(active);
+
+        if (index.length() == 0 && removed.length() == 0) {
+            return null;
+        }
+
+        JSONObject obj = new JSONObject();
+        obj.put("index", index);
+        obj.put("status", status);
+        obj.put("progress", progress);
+        obj.put("bytesDownloaded", bytesDownloaded);
+        obj.put("bytesTotal", bytesTotal);
+        obj.put("speed", speed);
+        obj.put("entriesExtracted", entriesExtracted);
+        obj.put("entriesTotal", entriesTotal);
+        obj.put("urls", urls);
+        obj.put("removed", removed);
+
+        return obj;
+    }
+}
@@ -0,0 +1,187 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+
+/**
+ * Remote file info
+ * Size, range support and validators of a remote file.
+ */
+class RemoteFileInfo {
+    private int responseCode;
+    private long contentLength = -1;
+    private boolean acceptRanges;
+    private String etag;
+    private String lastModified;
+
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    public boolean isNotModified() {
+        return responseCode == HttpURLConnection.HTTP_NOT_MODIFIED;
+    }
+
+    public boolean isAcceptRanges() {
+        return acceptRanges;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Get validator for If-Range header
+     *
+     * @return Strong ETag, Last-Modified date or null
+     */
+    public String getValidator() {
+        return getValidator(this.etag, this.lastModified);
+    }
+
+    /**
+     * Probe given URL with a one byte range request
+     *
+     * @param remoteUrl Remote URL
+     * @return RemoteFileInfo
+     * @throws IOException IO error
+     */
+    static RemoteFileInfo probe(String remoteUrl) throws IOException {
+        return probe(remoteUrl, null, null);
+    }
+
+    /**
+     * Probe given URL with a one byte range request, conditional on given validators
+     *
+     * @param remoteUrl Remote URL
+     * @param etag ETag of the local copy for If-None-Match or null
+     * @param lastModified Last-Modified of the local copy for If-Modified-Since or null
+     * @return RemoteFileInfo
+     * @throws IOException IO error
+     */
+    static RemoteFileInfo probe(String remoteUrl, String etag, String lastModified) throws IOException {
+        HttpURLConnection connection = Utils.openConnection(remoteUrl);
+        connection.setRequestProperty("Range", "bytes=0-0");
+        if (null != etag) {
+            connection.setRequestProperty("If-None-Match", etag);
+        }
+        if (null != lastModified) {
+            connection.setRequestProperty("If-Modified-Since", lastModified);
+        }
+
+        try {
+            RemoteFileInfo info = new RemoteFileInfo();
+            info.responseCode = connection.getResponseCode();
+            info.etag = connection.getHeaderField("ETag");
+            info.lastModified = connection.getHeaderField("Last-Modified");
+
+            if (info.responseCode == HttpURLConnection.HTTP_PARTIAL) {
+                info.acceptRanges = true;
+                info.contentLength = getRangeTotal(connection.getHeaderField("Content-Range"));
+            } else {
+                info.contentLength = Utils.getContentLength(connection);
+            }
+
+            return info;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Get validator for If-Range header
+     *
+     * @param etag ETag header value
+     * @param lastModified Last-Modified header value
+     * @return Strong ETag, Last-Modified date or null
+     */
+    static String getValidator(String etag, String lastModified) {
+        if (null != etag && !etag.startsWith("W/")) {
+            return etag;
+        }
+
+        return lastModified;
+    }
+
+    /**
+     * Get first byte position from Content-Range header ("bytes 100-199/1234")
+     *
+     * @param contentRange Header value
+     * @return First byte position or -1 if unknown
+     */
+    static long getRangeStart(String contentRange) {
+        if (null == contentRange || !contentRange.startsWith("bytes ") || contentRange.indexOf('-') < 0) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(contentRange.substring(6, contentRange.indexOf('-')).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Get last byte position from Content-Range header ("bytes 100-199/1234")
+     *
+     * @param contentRange Header value
+     * @return Last byte position or -1 if unknown
+     */
+    static long getRangeEnd(String contentRange) {
+        if (null == contentRange || !contentRange.startsWith("bytes ") || contentRange.indexOf('-') < 0) {
+            return -1;
+        }
+
+        int end = contentRange.indexOf('/');
+        try {
+            return Long.parseLong(contentRange.substring(contentRange.indexOf('-') + 1, end < 0 ? contentRange.length() : end).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Get complete length from Content-Range header ("bytes 0-0/1234")
+     *
+     * @param contentRange Header value
+     * @return Complete length or -1 if unknown
+     */
+    static long getRangeTotal(String contentRange) {
+        if (null == contentRange || contentRange.indexOf('/') < 0) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(contentRange.substring(contentRange.lastIndexOf('/') + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
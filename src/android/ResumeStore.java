@@ -0,0 +1,110 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Resume store
+ * Persisted state of partial downloads, so they can be continued with a range request.
+ */
+class ResumeStore {
+    private static final String PREFERENCES_NAME = "eu.intrasoft.cordova.filesdownloader.resume";
+
+    private final SharedPreferences preferences;
+
+    ResumeStore(Context context) {
+        this.preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Get resume state for given URL
+     *
+     * @param remoteUrl Remote URL
+     * @return State or null
+     */
+    public State get(String remoteUrl) {
+        String value = this.preferences.getString(remoteUrl, null);
+        if (null == value) {
+            return null;
+        }
+
+        try {
+            JSONObject obj = new JSONObject(value);
+            return new State(obj.getString("validator"), obj.getLong("bytes"), obj.getLong("total"));
+        } catch (JSONException e) {
+            this.remove(remoteUrl);
+            return null;
+        }
+    }
+
+    public void put(String remoteUrl, State state) {
+        try {
+            JSONObject obj = new JSONObject();
+            obj.put("validator", state.getValidator());
+            obj.put("bytes", state.getBytes());
+            obj.put("total", state.getTotal());
+
+            this.preferences.edit().putString(remoteUrl, obj.toString()).apply();
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void remove(String remoteUrl) {
+        this.preferences.edit().remove(remoteUrl).apply();
+    }
+
+    /**
+     * Resume state of one download
+     */
+    static class State {
+        private final String validator;
+        private final long bytes;
+        private final long total;
+
+        /**
+         * @param validator ETag or Last-Modified value of the partial content
+         * @param bytes Bytes written to the temporary file
+         * @param total Remote file size or -1 if unknown
+         */
+        State(String validator, long bytes, long total) {
+            this.validator = validator;
+            this.bytes = bytes;
+            this.total = total;
+        }
+
+        public String getValidator() {
+            return validator;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Segmented download
+ * Fetches byte ranges of one remote file over parallel connections
+ * and writes them at their offsets into a preallocated file.
+ */
+class SegmentedDownload {
+    interface Progress {
+        void onProgress(long processed, long total);
+    }
+
+    private final String remoteUrl;
+    private final File file;
+    private final long total;
+    private final String validator;
+    private final int segments;
+    private final int bufferSize;
+    private final Progress progress;
+    private final AtomicLong processed = new AtomicLong();
+    private final List<HttpURLConnection> connections = new ArrayList<HttpURLConnection>();
+    private volatile boolean cancelled = false;
+
+    /**
+     * @param remoteUrl Remote URL
+     * @param file Target file
+     * @param total Remote file size
+     * @param validator ETag or Last-Modified value sent as If-Range, may be null
+     * @param segments Number of parallel connections
+     * @param bufferSize Read buffer size of each connection
+     * @param progress Progress listener
+     */
+    SegmentedDownload(String remoteUrl, File file, long total, String validator, int segments, int bufferSize, Progress progress) {
+        this.remoteUrl = remoteUrl;
+        this.file = file;
+        this.total = total;
+        this.validator = validator;
+        this.segments = segments;
+        this.bufferSize = bufferSize;
+        this.progress = progress;
+    }
+
+    /**
+     * Stop all connections
+     */
+    public void cancel() {
+        this.cancelled = true;
+
+        synchronized (this.connections) {
+            for (HttpURLConnection connection : this.connections) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Download all segments and wait for them
+     *
+     * @throws DownloadException Download error
+     * @throws IOException IO error
+     */
+    public void run() throws DownloadException, IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(this.file, "rw")) {
+            raf.setLength(this.total);
+            DiskSpace.preallocate(raf, 0, this.total);
+        }
+
+        long segmentSize = this.total / this.segments;
+        ExecutorService executor = Executors.newFixedThreadPool(this.segments);
+
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>(this.segments);
+            for (int i = 0; i < this.segments; i++) {
+                final long start = i * segmentSize;
+                final long end = i == this.segments - 1 ? this.total - 1 : start + segmentSize - 1;
+
+                futures.add(executor.submit(() -> {
+                    fetch(start, end);
+                    return null;
+                }));
+            }
+
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    this.cancel();
+
+                    Throwable cause = e.getCause();
+                    if (cause instanceof DownloadException) {
+                        throw (DownloadException) cause;
+                    }
+                    throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                } catch (InterruptedException e) {
+                    this.cancel();
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Download interrupted.");
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Fetch one segment
+     *
+     * @param start First byte
+     * @param end Last byte (inclusive)
+     * @throws DownloadException Download error
+     * @throws IOException IO error
+     */
+    private void fetch(long start, long end) throws DownloadException, IOException {
+        HttpURLConnection connection = Utils.openConnection(this.remoteUrl);
+        connection.setRequestProperty("Range", "bytes=" + start + "-" + end);
+        if (null != this.validator) {
+            connection.setRequestProperty("If-Range", this.validator);
+        }
+
+        synchronized (this.connections) {
+            if (this.cancelled) {
+                return;
+            }
+            this.connections.add(connection);
+        }
+
+        try {
+            int responseCode = connection.getResponseCode();
+            String contentRange = connection.getHeaderField("Content-Range");
+            if (responseCode != HttpURLConnection.HTTP_PARTIAL
+                    || RemoteFileInfo.getRangeStart(contentRange) != start
+                    || RemoteFileInfo.getRangeEnd(contentRange) != end) {
+                // Full body means the remote file has changed since the probe, another range would be written at a wrong offset
+                throw new DownloadException(106, "Server did not return requested range (HTTP " + responseCode + ").");
+            }
+
+            try (InputStream in = connection.getInputStream();
+                 RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+                 FileChannel channel = raf.getChannel()) {
+                byte[] buffer = new byte[this.bufferSize];
+                long position = start;
+                int count;
+
+                while (!this.cancelled && position <= end && (count = in.read(buffer)) != -1) {
+                    count = (int) Math.min(count, end - position + 1);
+                    ByteBuffer data = ByteBuffer.wrap(buffer, 0, count);
+                    while (data.hasRemaining()) {
+                        position += channel.write(data, position);
+                    }
+
+                    this.progress.onProgress(this.processed.addAndGet(count), this.total);
+                }
+
+                if (!this.cancelled && position <= end) {
+                    throw new IOException("Connection closed before the end of segment.");
+                }
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,555 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Tar extractor
+ * Extracts tar archives, gzip compressed tar archives and single gzip files in one streaming pass.
+ * Links and special files are skipped.
+ */
+class TarExtractor {
+    private static final int BLOCK_SIZE = 512;
+    private static final int MIN_BUFFER_SIZE = 64 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final byte[] buffer;
+    private final byte[] header = new byte[BLOCK_SIZE];
+    private long bytes;
+    private long entries;
+    private TransferStats stats;
+
+    /**
+     * @param bufferSize Size of the buffer reused for all entries, at least 64 kB
+     */
+    TarExtractor(int bufferSize) {
+        this.buffer = new byte[Math.max(MIN_BUFFER_SIZE, bufferSize)];
+    }
+
+    /**
+     * Extract given archive next to it
+     *
+     * @param archive Archive file
+     * @param format Archive format: tar, tar.gz, gz or auto
+     * @param stats Stats to update, may be null
+     * @param progress Progress of the archive read so far, may be null
+     * @throws IOException IO Error
+     */
+    public void extract(File archive, String format, TransferStats stats, Utils.ExtractZipProgress progress) throws IOException {
+        try (InputStream in = new ProgressInputStream(new FileInputStream(archive), archive.length(), progress)) {
+            this.extract(in, format, archive, stats);
+        }
+    }
+
+    /**
+     * Extract archive read from given stream into the directory of the archive file
+     *
+     * @param in Archive stream
+     * @param format Archive format: tar, tar.gz, gz or auto
+     * @param archive Archive file, a gzip file is decompressed into it without the .gz suffix
+     * @param stats Stats to update, may be null
+     * @throws IOException IO Error
+     */
+    public void extract(InputStream in, String format, File archive, TransferStats stats) throws IOException {
+        this.stats = stats;
+        this.bytes = 0;
+        this.entries = 0;
+
+        if (!in.markSupported()) {
+            in = new BufferedInputStream(in, this.buffer.length);
+        }
+
+        if (Utils.FORMAT_AUTO.equals(format)) {
+            format = detectFormat(in);
+        }
+
+        if (Utils.FORMAT_TAR_GZ.equals(format) || Utils.FORMAT_GZ.equals(format)) {
+            in = new BufferedInputStream(new GZIPInputStream(in, this.buffer.length), this.buffer.length);
+
+            // Compressed tar archive or single file
+            if (Utils.FORMAT_GZ.equals(format) && isTar(in)) {
+                format = Utils.FORMAT_TAR_GZ;
+            }
+        }
+
+        if (Utils.FORMAT_GZ.equals(format)) {
+            this.extractFile(in, getGzipTarget(archive));
+        } else {
+            this.extractTar(in, archive.getParentFile());
+        }
+    }
+
+    /**
+     * Detect format of a stream by its magic bytes. Gzip streams are reported as gz.
+     *
+     * @param in Stream supporting mark
+     * @return Format
+     * @throws IOException Unknown format
+     */
+    private static String detectFormat(InputStream in) throws IOException {
+        in.mark(2);
+        int b1 = in.read();
+        int b2 = in.read();
+        in.reset();
+
+        if (b1 == 0x1f && b2 == 0x8b) {
+            return Utils.FORMAT_GZ;
+        }
+
+        if (isTar(in)) {
+            return Utils.FORMAT_TAR;
+        }
+
+        throw new IOException("Unknown archive format.");
+    }
+
+    /**
+     * Check if stream starts with a ustar header
+     *
+     * @param in Stream supporting mark
+     * @return True for tar archives
+     * @throws IOException IO Error
+     */
+    private static boolean isTar(InputStream in) throws IOException {
+        byte[] block = new byte[BLOCK_SIZE];
+
+        in.mark(BLOCK_SIZE);
+        int length = 0;
+        int count;
+        while (length < BLOCK_SIZE && (count = in.read(block, length, BLOCK_SIZE - length)) != -1) {
+            length += count;
+        }
+        in.reset();
+
+        return length == BLOCK_SIZE && new String(block, 257, 5, UTF_8).equals("ustar");
+    }
+
+    /**
+     * Get target of a gzip compressed file
+     *
+     * @param archive Gzip file
+     * @return File without the .gz suffix
+     * @throws IOException Archive has no .gz suffix
+     */
+    static File getGzipTarget(File archive) throws IOException {
+        String name = archive.getName();
+        if (!name.toLowerCase(Locale.ROOT).endsWith(".gz") || name.length() == 3) {
+            throw new IOException("Gzip file name must end with .gz: " + name);
+        }
+
+        return new File(archive.getParentFile(), name.substring(0, name.length() - 3));
+    }
+
+    /**
+     * Extract entries of a tar stream
+     *
+     * @param in Tar stream
+     * @param destinationDir Destination directory
+     * @throws IOException IO Error
+     */
+    private void extractTar(InputStream in, File destinationDir) throws IOException {
+        String destinationPath = destinationDir.getCanonicalPath() + File.separator;
+        Set<File> dirs = new HashSet<File>();
+        String longName = null;
+        long longSize = -1;
+
+        while (readBlock(in)) {
+            if (isZeroBlock(this.header)) {
+                break;
+            }
+
+            if (getChecksum(this.header) != parseNumber(this.header, 148, 8)) {
+                throw new IOException("Invalid tar header.");
+            }
+
+            byte type = this.header[156];
+            long size = longSize >= 0 ? longSize : parseNumber(this.header, 124, 12);
+            String name = null != longName ? longName : getName(this.header);
+
+            if (type == 'L' || type == 'x') {
+                // GNU long name or pax extended header of the next entry
+                String data = new String(this.readData(in, parseNumber(this.header, 124, 12)), UTF_8);
+                if (type == 'L') {
+                    longName = trimNull(data);
+                } else {
+                    String path = getPaxRecord(data, "path");
+                    String paxSize = getPaxRecord(data, "size");
+                    if (null != path) {
+                        longName = path;
+                    }
+                    if (null != paxSize) {
+                        longSize = Long.parseLong(paxSize);
+                    }
+                }
+                continue;
+            }
+
+            longName = null;
+            longSize = -1;
+
+            // Archives created from "." name their entries "./..."
+            while (name.startsWith("./")) {
+                name = name.substring(2);
+            }
+            if (name.isEmpty() || name.equals(".")) {
+                this.skip(in, size + getPadding(size));
+                continue;
+            }
+
+            if (type == '5') {
+                ZipExtractor.mkdirs(ZipExtractor.getTarget(destinationDir, destinationPath, name), dirs);
+                this.skip(in, size + getPadding(size));
+            } else if (type == '0' || type == 0 || type == '7') {
+                File target = ZipExtractor.getTarget(destinationDir, destinationPath, name);
+                ZipExtractor.mkdirs(target.getParentFile(), dirs);
+                this.write(in, target, size);
+                this.skip(in, getPadding(size));
+                this.entries++;
+                this.report();
+            } else {
+                this.skip(in, size + getPadding(size));
+            }
+        }
+    }
+
+    /**
+     * Extract single gzip compressed file
+     *
+     * @param in Decompressed stream
+     * @param target Target file
+     * @throws IOException IO Error
+     */
+    private void extractFile(InputStream in, File target) throws IOException {
+        this.write(in, target, -1);
+        this.entries++;
+        this.report();
+    }
+
+    /**
+     * Write given number of bytes from stream to file
+     *
+     * @param in Stream
+     * @param target Target file
+     * @param size Bytes to write, -1 to write until end of stream
+     * @throws IOException IO Error
+     */
+    private void write(InputStream in, File target, long size) throws IOException {
+        long remaining = size;
+        int count;
+
+        try (OutputStream out = new FileOutputStream(target)) {
+            while (size < 0 || remaining > 0) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new IOException("Extraction interrupted.");
+                }
+
+                int length = size < 0 ? this.buffer.length : (int) Math.min(this.buffer.length, remaining);
+                count = in.read(this.buffer, 0, length);
+                if (count == -1) {
+                    if (size < 0) {
+                        break;
+                    }
+                    throw new EOFException("Unexpected end of tar archive.");
+                }
+
+                out.write(this.buffer, 0, count);
+                remaining -= count;
+                this.bytes += count;
+                if (null != this.stats) {
+                    this.stats.update(this.bytes, -1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read entry data including padding
+     *
+     * @param in Stream
+     * @param size Data size
+     * @return Data
+     * @throws IOException IO Error
+     */
+    private byte[] readData(InputStream in, long size) throws IOException {
+        if (size > this.buffer.length) {
+            throw new IOException("Tar extended header is too large.");
+        }
+
+        byte[] data = new byte[(int) size];
+        this.readFully(in, data, (int) size);
+        this.skip(in, getPadding(size));
+
+        return data;
+    }
+
+    /**
+     * Read next header block
+     *
+     * @param in Stream
+     * @return False at end of stream
+     * @throws IOException Stream ends within the block
+     */
+    private boolean readBlock(InputStream in) throws IOException {
+        int count = in.read(this.header, 0, BLOCK_SIZE);
+        if (count == -1) {
+            return false;
+        }
+
+        if (count < BLOCK_SIZE) {
+            byte[] rest = new byte[BLOCK_SIZE - count];
+            this.readFully(in, rest, rest.length);
+            System.arraycopy(rest, 0, this.header, count, rest.length);
+        }
+
+        return true;
+    }
+
+    /**
+     * Read exactly given number of bytes
+     *
+     * @param in Stream
+     * @param data Target array
+     * @param length Bytes to read
+     * @throws IOException Stream ends before
+     */
+    private void readFully(InputStream in, byte[] data, int length) throws IOException {
+        int offset = 0;
+        int count;
+        while (offset < length) {
+            count = in.read(data, offset, length - offset);
+            if (count == -1) {
+                throw new EOFException("Unexpected end of tar archive.");
+            }
+            offset += count;
+        }
+    }
+
+    /**
+     * Skip given number of bytes
+     *
+     * @param in Stream
+     * @param length Bytes to skip
+     * @throws IOException Stream ends before
+     */
+    private void skip(InputStream in, long length) throws IOException {
+        long remaining = length;
+        int count;
+        while (remaining > 0) {
+            count = in.read(this.buffer, 0, (int) Math.min(this.buffer.length, remaining));
+            if (count == -1) {
+                throw new EOFException("Unexpected end of tar archive.");
+            }
+            remaining -= count;
+        }
+    }
+
+    /**
+     * Update entry stats
+     */
+    private void report() {
+        if (null != this.stats) {
+            this.stats.update(this.bytes, -1);
+            this.stats.updateEntries(this.entries, -1);
+        }
+    }
+
+    /**
+     * Get entry name, including the prefix of POSIX ustar headers
+     *
+     * @param header Header block
+     * @return Name
+     */
+    private static String getName(byte[] header) {
+        String name = getString(header, 0, 100);
+        // Old GNU headers keep other fields in the prefix area
+        if (new String(header, 257, 5, UTF_8).equals("ustar") && header[262] == 0) {
+            String prefix = getString(header, 345, 155);
+            if (!prefix.isEmpty()) {
+                name = prefix + "/" + name;
+            }
+        }
+
+        return name;
+    }
+
+    /**
+     * Get null terminated string from header
+     *
+     * @param header Header block
+     * @param offset Field offset
+     * @param length Field length
+     * @return String
+     */
+    private static String getString(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+
+        return new String(header, offset, end - offset, UTF_8);
+    }
+
+    private static String trimNull(String value) {
+        int end = value.indexOf(0);
+
+        return end >= 0 ? value.substring(0, end) : value;
+    }
+
+    /**
+     * Parse octal or base-256 encoded number
+     *
+     * @param header Header block
+     * @param offset Field offset
+     * @param length Field length
+     * @return Number
+     */
+    private static long parseNumber(byte[] header, int offset, int length) {
+        long value = 0;
+
+        if ((header[offset] & 0x80) != 0) {
+            for (int i = offset + 1; i < offset + length; i++) {
+                value = (value << 8) | (header[i] & 0xff);
+            }
+            return value;
+        }
+
+        int i = offset;
+        while (i < offset + length && (header[i] == ' ' || header[i] == 0)) {
+            i++;
+        }
+        while (i < offset + length && header[i] >= '0' && header[i] <= '7') {
+            value = (value << 3) + (header[i] - '0');
+            i++;
+        }
+
+        return value;
+    }
+
+    /**
+     * Get header checksum, the checksum field counts as spaces
+     *
+     * @param header Header block
+     * @return Checksum
+     */
+    private static long getChecksum(byte[] header) {
+        long sum = 0;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            sum += i >= 148 && i < 156 ? ' ' : header[i] & 0xff;
+        }
+
+        return sum;
+    }
+
+    private static boolean isZeroBlock(byte[] header) {
+        for (byte b : header) {
+            if (b != 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static long getPadding(long size) {
+        return (BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE;
+    }
+
+    /**
+     * Get value of a pax extended header record
+     *
+     * @param data Records, each as "length key=value\n"
+     * @param key Key
+     * @return Value or null
+     */
+    private static String getPaxRecord(String data, String key) {
+        for (String record : data.split("\n")) {
+            int space = record.indexOf(' ');
+            int equals = record.indexOf('=');
+            if (space >= 0 && equals > space && record.substring(space + 1, equals).equals(key)) {
+                return record.substring(equals + 1);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Input stream reporting percentage of the archive read
+     */
+    private static class ProgressInputStream extends FilterInputStream {
+        private final long total;
+        private final Utils.ExtractZipProgress progress;
+        private long processed = 0;
+        private int percentage = -1;
+
+        ProgressInputStream(InputStream in, long total, Utils.ExtractZipProgress progress) {
+            super(in);
+            this.total = total;
+            this.progress = progress;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                this.report(1);
+            }
+
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count > 0) {
+                this.report(count);
+            }
+
+            return count;
+        }
+
+        private void report(int count) {
+            this.processed += count;
+            if (null == this.progress || this.total <= 0) {
+                return;
+            }
+
+            int current = (int) Math.min(100, this.processed * 100 / this.total);
+            if (current > this.percentage) {
+                this.percentage = current;
+                this.progress.Progress(current);
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+/**
+ * Transfer stats
+ * Bytes, entries and smoothed (EWMA) rate of one transfer, updated incrementally.
+ */
+class TransferStats {
+    /**
+     * Weight of the newest rate sample
+     */
+    private static final double SMOOTHING = 0.3;
+
+    /**
+     * Minimal time between two rate samples
+     */
+    private static final long SAMPLE_INTERVAL = 500;
+
+    private long bytes = 0;
+    private long bytesTotal = -1;
+    private long entries = 0;
+    private long entriesTotal = -1;
+    private long bytesSkipped = 0;
+    private long entriesSkipped = 0;
+    private double rate = 0;
+    private long sampleTime = -1;
+    private long sampleBytes = 0;
+
+    /**
+     * Update transferred bytes
+     *
+     * @param bytes Bytes transferred so far
+     * @param bytesTotal Total bytes or -1 if unknown
+     */
+    public synchronized void update(long bytes, long bytesTotal) {
+        long now = System.nanoTime() / 1000000;
+
+        this.bytes = bytes;
+        this.bytesTotal = bytesTotal;
+
+        if (this.sampleTime < 0) {
+            this.sampleTime = now;
+            this.sampleBytes = bytes;
+            return;
+        }
+
+        long elapsed = now - this.sampleTime;
+        if (elapsed < SAMPLE_INTERVAL) {
+            return;
+        }
+
+        double current = (double) (bytes - this.sampleBytes) * 1000 / elapsed;
+        this.rate = this.rate > 0 ? SMOOTHING * current + (1 - SMOOTHING) * this.rate : current;
+        this.sampleTime = now;
+        this.sampleBytes = bytes;
+    }
+
+    /**
+     * Update processed entries
+     *
+     * @param entries Entries processed so far
+     * @param entriesTotal Total entries or -1 if unknown
+     */
+    public synchronized void updateEntries(long entries, long entriesTotal) {
+        this.entries = entries;
+        this.entriesTotal = entriesTotal;
+    }
+
+    /**
+     * Update entries left untouched because they were already in place
+     *
+     * @param bytesSkipped Bytes skipped so far
+     * @param entriesSkipped Entries skipped so far
+     */
+    public synchronized void updateSkipped(long bytesSkipped, long entriesSkipped) {
+        this.bytesSkipped = bytesSkipped;
+        this.entriesSkipped = entriesSkipped;
+    }
+
+    public synchronized long getBytesSkipped() {
+        return bytesSkipped;
+    }
+
+    public synchronized long getEntriesSkipped() {
+        return entriesSkipped;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getBytesTotal() {
+        return bytesTotal;
+    }
+
+    public synchronized long getEntries() {
+        return entries;
+    }
+
+    public synchronized long getEntriesTotal() {
+        return entriesTotal;
+    }
+
+    /**
+     * Get smoothed rate
+     *
+     * @return Bytes per second
+     */
+    public synchronized long getRate() {
+        return Math.round(rate);
+    }
+
+    /**
+     * Get estimated time remaining
+     *
+     * @return Seconds or -1 if unknown
+     */
+    public synchronized long getEta() {
+        if (this.rate <= 0 || this.bytesTotal < 0) {
+            return -1;
+        }
+
+        return (long) Math.ceil(Math.max(0, this.bytesTotal - this.bytes) / this.rate);
+    }
+
+    /**
+     * Check if any bytes have been reported
+     *
+     * @return True if stats are available
+     */
+    public synchronized boolean isStarted() {
+        return this.sampleTime >= 0;
+    }
+}
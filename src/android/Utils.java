@@ -20,6 +20,7 @@
 package eu.intrasoft.cordova.filesdownloader;
 
 import android.app.DownloadManager;
+import android.database.Cursor;
 
 import org.apache.cordova.CallbackContext;
 import org.json.JSONException;
@@ -31,15 +32,22 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Utils
  */
 final class Utils {
+    public static final String STATUS_QUEUED = "queued";
     public static final String STATUS_NEW = "new";
+    public static final String STATUS_UNCHANGED = "unchanged";
     public static final String STATUS_DOWNLOADING = "downloading";
     public static final String STATUS_PAUSED = "paused";
     public static final String STATUS_FINALIZING = "finalizing";
@@ -48,6 +56,20 @@ final class Utils {
     public static final String STATUS_CANCELLED = "cancelled";
     public static final String STATUS_EXTRACTING = "extracting";
 
+    public static final String FORMAT_ZIP = "zip";
+    public static final String FORMAT_TAR = "tar";
+    public static final String FORMAT_TAR_GZ = "tar.gz";
+    public static final String FORMAT_GZ = "gz";
+    public static final String FORMAT_AUTO = "auto";
+
+    /**
+     * Max number of IDs in one query (SQLite host parameter limit is 999)
+     */
+    private static final int QUERY_CHUNK_SIZE = 500;
+
+    private static final int CONNECT_TIMEOUT = 30000;
+    private static final int READ_TIMEOUT = 60000;
+
     /**
      * Get new download item
      *
@@ -64,6 +86,93 @@ final class Utils {
         );
     }
 
+    /**
+     * Get download info object for given cursor
+     *
+     * @param cursor Cursor with download result
+     * @return DownloadItemInfo
+     */
+    static DownloadItemInfo getDownloadInfo(Cursor cursor) {
+        int colId = cursor.getColumnIndex(DownloadManager.COLUMN_ID);
+        int colUri = cursor.getColumnIndex(DownloadManager.COLUMN_URI);
+        int colStatus = cursor.getColumnIndex(DownloadManager.COLUMN_STATUS);
+        int colReason = cursor.getColumnIndex(DownloadManager.COLUMN_REASON);
+        int colBytesDownloaded = cursor.getColumnIndex(DownloadManager.COLUMN_BYTES_DOWNLOADED_SO_FAR);
+        int colBytesTotal = cursor.getColumnIndex(DownloadManager.COLUMN_TOTAL_SIZE_BYTES);
+
+        DownloadItemInfo info = new DownloadItemInfo(cursor.getLong(colId), cursor.getString(colUri));
+        info.setStatus(cursor.getInt(colStatus));
+        info.setReason(cursor.getInt(colReason));
+        info.setBytesDownloaded(cursor.getLong(colBytesDownloaded));
+        info.setBytesTotal(cursor.getLong(colBytesTotal));
+
+        return info;
+    }
+
+    /**
+     * Find download info for given IDs
+     *
+     * @param downloadManager Download manager
+     * @param ids Download IDs
+     * @return Map of download info by ID, missing downloads are not included
+     */
+    static Map<Long, DownloadItemInfo> findDownloadInfoByIds(DownloadManager downloadManager, long[] ids) {
+        Map<Long, DownloadItemInfo> infos = new HashMap<Long, DownloadItemInfo>(ids.length * 2);
+
+        for (int from = 0; from < ids.length; from += QUERY_CHUNK_SIZE) {
+            DownloadManager.Query query = new DownloadManager.Query();
+            query.setFilterById(Arrays.copyOfRange(ids, from, Math.min(ids.length, from + QUERY_CHUNK_SIZE)));
+
+            try (Cursor cursor = downloadManager.query(query)) {
+                if (null == cursor) {
+                    continue;
+                }
+
+                for (cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
+                    DownloadItemInfo info = getDownloadInfo(cursor);
+                    infos.put(info.getId(), info);
+                }
+            }
+        }
+
+        return infos;
+    }
+
+    /**
+     * Open HTTP connection for given URL
+     *
+     * @param remoteUrl Remote URL
+     * @return HttpURLConnection
+     * @throws IOException IO error
+     */
+    static HttpURLConnection openConnection(String remoteUrl) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(remoteUrl).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        connection.setInstanceFollowRedirects(true);
+
+        return connection;
+    }
+
+    /**
+     * Get content length of given response
+     *
+     * @param connection HTTP connection
+     * @return Content length or -1 if unknown
+     */
+    static long getContentLength(HttpURLConnection connection) {
+        String contentLength = connection.getHeaderField("Content-Length");
+        if (null == contentLength) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(contentLength.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
     /**
      * Get status for given item
      *
@@ -89,6 +198,17 @@ final class Utils {
         return STATUS_NEW;
     }
 
+    /**
+     * Check if given status ends the lifecycle of an item
+     *
+     * @param status Status
+     * @return True for finished, unchanged, failed and cancelled
+     */
+    static boolean isFinalStatus(String status) {
+        return STATUS_FINISHED.equals(status) || STATUS_UNCHANGED.equals(status)
+                || STATUS_FAILED.equals(status) || STATUS_CANCELLED.equals(status);
+    }
+
     /**
      * Get JSON result for given item
      *
@@ -98,13 +218,34 @@ final class Utils {
      * @return JSONObject
      */
     static JSONObject getResultJSON(DownloadItem item, String status, int progress) throws JSONException {
-        JSONObject jsonProgress = new JSONObject();
         JSONObject obj = new JSONObject();
         obj.put("url", item.getRemoteUrl());
         obj.put("id", item.getId());
         obj.put("progress", progress);
         obj.put("status", status);
 
+        TransferStats download = item.getDownloadStats();
+        if (download.isStarted()) {
+            obj.put("bytesDownloaded", download.getBytes());
+            obj.put("bytesTotal", download.getBytesTotal());
+            obj.put("speed", download.getRate());
+            obj.put("eta", download.getEta());
+        }
+
+        TransferStats extract = item.getExtractStats();
+        if (STATUS_EXTRACTING.equals(status) && extract.isStarted()) {
+            obj.put("entriesExtracted", extract.getEntries());
+            obj.put("entriesTotal", extract.getEntriesTotal());
+            obj.put("bytesExtracted", extract.getBytes());
+            obj.put("bytesExtractedTotal", extract.getBytesTotal());
+            obj.put("extractSpeed", extract.getRate());
+        }
+
+        if (extract.getEntriesSkipped() > 0) {
+            obj.put("entriesSkipped", extract.getEntriesSkipped());
+            obj.put("bytesSkipped", extract.getBytesSkipped());
+        }
+
         return obj;
     }
 
@@ -146,49 +287,104 @@ final class Utils {
      *
      * @param destinationPath Destination path (working directory)
      * @param zipName Archive file name
+     * @param parallelism Number of extraction threads
+     * @param manifestFile Manifest of previous extraction, entries matching it are skipped. Null extracts everything
+     * @param stats Extraction stats to update, may be null
+     * @param progress Progress listener
      * @return True if passed
-     * @throws IOException IO Error
      */
-    static boolean extractZip(String destinationPath, String zipName, ExtractZipProgress progress) throws IOException {
-        InputStream is;
-        ZipInputStream zis;
+    static boolean extractZip(String destinationPath, String zipName, int parallelism, File manifestFile, TransferStats stats, ExtractZipProgress progress) {
         try {
-            long total = new File(destinationPath + "/" + zipName).length();
-            long processed = 0;
-
-            String filename;
-            is = new FileInputStream(destinationPath + "/" + zipName);
-            zis = new ZipInputStream(new BufferedInputStream(is));
-            ZipEntry ze;
-            byte[] buffer = new byte[1024];
-            int count;
-
-            while ((ze = zis.getNextEntry()) != null) {
-                if (progress != null) {
-                    processed += ze.getCompressedSize();
-                    int percentage = (int)Math.ceil((double)processed / (double)total * 100);
-                    progress.Progress(percentage);
-                }
+            new ZipExtractor(parallelism).extract(
+                    new File(destinationPath, zipName),
+                    new File(destinationPath),
+                    manifestFile,
+                    stats,
+                    progress
+            );
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
 
-                filename = ze.getName();
+        return true;
+    }
 
-                if (ze.isDirectory()) {
-                    File fmd = new File(destinationPath + "/" + filename);
-                    fmd.mkdirs();
-                    continue;
-                }
+    /**
+     * Extract given zip to provided path
+     *
+     * @param destinationPath Destination path (working directory)
+     * @param zipName Archive file name
+     * @param progress Progress listener
+     * @return True if passed
+     */
+    static boolean extractZip(String destinationPath, String zipName, ExtractZipProgress progress) {
+        return extractZip(destinationPath, zipName, ZipExtractor.getDefaultParallelism(), null, null, progress);
+    }
 
-                FileOutputStream fout = new FileOutputStream(destinationPath + "/" + filename);
+    /**
+     * Check if given archive format is supported
+     *
+     * @param format Format
+     * @return True for zip, tar, tar.gz, gz and auto
+     */
+    static boolean isArchiveFormat(String format) {
+        return FORMAT_ZIP.equals(format) || FORMAT_TAR.equals(format) || FORMAT_TAR_GZ.equals(format)
+                || FORMAT_GZ.equals(format) || FORMAT_AUTO.equals(format);
+    }
 
-                while ((count = zis.read(buffer)) != -1) {
-                    fout.write(buffer, 0, count);
+    /**
+     * Check if stream starts with a ZIP signature. The stream is reset to its start.
+     *
+     * @param in Stream supporting mark
+     * @return True for ZIP archives
+     * @throws IOException IO Error
+     */
+    static boolean isZip(InputStream in) throws IOException {
+        in.mark(4);
+        byte[] head = new byte[4];
+        int length = 0;
+        int count;
+        while (length < head.length && (count = in.read(head, length, head.length - length)) != -1) {
+            length += count;
+        }
+        in.reset();
+
+        return length == head.length && head[0] == 'P' && head[1] == 'K'
+                && ((head[2] == 3 && head[3] == 4) || (head[2] == 5 && head[3] == 6));
+    }
+
+    /**
+     * Extract given archive to provided path. ZIP archives are extracted in parallel,
+     * other formats in one streaming pass.
+     *
+     * @param destinationPath Destination path (working directory)
+     * @param archiveName Archive file name
+     * @param format Archive format: zip, tar, tar.gz, gz or auto to detect it by magic bytes
+     * @param parallelism Number of ZIP extraction threads
+     * @param manifestFile Manifest of previous ZIP extraction, entries matching it are skipped. Null extracts everything
+     * @param stats Extraction stats to update, may be null
+     * @param progress Progress listener
+     * @return True if passed
+     */
+    static boolean extractArchive(String destinationPath, String archiveName, String format, int parallelism, File manifestFile, TransferStats stats, ExtractZipProgress progress) {
+        File archive = new File(destinationPath, archiveName);
+
+        try {
+            if (FORMAT_AUTO.equals(format)) {
+                try (InputStream in = new BufferedInputStream(new FileInputStream(archive), 4)) {
+                    if (isZip(in)) {
+                        format = FORMAT_ZIP;
+                    }
                 }
+            }
 
-                fout.close();
-                zis.closeEntry();
+            if (FORMAT_ZIP.equals(format)) {
+                return extractZip(destinationPath, archiveName, parallelism, manifestFile, stats, progress);
             }
 
-            zis.close();
+            new TarExtractor(0).extract(archive, format, stats, progress);
         }
         catch (IOException e) {
             e.printStackTrace();
@@ -198,6 +394,123 @@ final class Utils {
         return true;
     }
 
+    /**
+     * Get message digest for given algorithm
+     *
+     * @param algorithm Algorithm name, e.g. SHA-256
+     * @return MessageDigest
+     * @throws IOException Unsupported algorithm
+     */
+    static MessageDigest getMessageDigest(String algorithm) throws IOException {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("Unsupported hash algorithm: " + algorithm);
+        }
+    }
+
+    /**
+     * Feed first bytes of given file to the digest
+     *
+     * @param digest Message digest
+     * @param file File
+     * @param length Number of bytes to read
+     * @throws IOException IO Error
+     */
+    static void updateDigest(MessageDigest digest, File file, long length) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long remaining = length;
+        int count;
+
+        try (FileInputStream in = new FileInputStream(file)) {
+            while (remaining > 0 && (count = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                digest.update(buffer, 0, count);
+                remaining -= count;
+            }
+        }
+    }
+
+    /**
+     * Get hash of given file
+     *
+     * @param file File
+     * @param algorithm Algorithm name
+     * @return Lowercase hex digest
+     * @throws IOException IO Error
+     */
+    static String getFileHash(File file, String algorithm) throws IOException {
+        MessageDigest digest = getMessageDigest(algorithm);
+        updateDigest(digest, file, file.length());
+
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Convert bytes to lowercase hex string
+     *
+     * @param bytes Bytes
+     * @return Hex string
+     */
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(b & 0xf, 16));
+        }
+
+        return hex.toString();
+    }
+
+    /**
+     * Move given file.
+     * Renames the file when both paths are on the same volume, copies it otherwise.
+     *
+     * @param src Source file
+     * @param dst Destination file
+     * @throws IOException IO Error
+     */
+    public static void moveFile(File src, File dst) throws IOException {
+        if (src.renameTo(dst)) {
+            return;
+        }
+
+        copyFile(src, dst);
+        src.delete();
+    }
+
+    /**
+     * Move given file, its contents are fed to the digest when they have to be copied
+     *
+     * @param src Source file
+     * @param dst Destination file
+     * @param digest Message digest
+     * @return True if the file was copied and the digest updated, false if it was renamed
+     * @throws IOException IO Error
+     */
+    public static boolean moveFile(File src, File dst, MessageDigest digest) throws IOException {
+        if (src.renameTo(dst)) {
+            return false;
+        }
+
+        byte[] buffer = new byte[64 * 1024];
+        int count;
+
+        try (FileInputStream in = new FileInputStream(src)) {
+            try (FileOutputStream out = new FileOutputStream(dst)) {
+                while ((count = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, count);
+                    digest.update(buffer, 0, count);
+                }
+            }
+        } catch (IOException e) {
+            dst.delete();
+            throw e;
+        }
+        src.delete();
+
+        return true;
+    }
+
     /**
      * Copy given file
      *
@@ -206,15 +519,29 @@ final class Utils {
      * @throws IOException IO Error
      */
     public static void copyFile(File src, File dst) throws IOException {
-        try (InputStream in = new FileInputStream(src)) {
-            try (OutputStream out = new FileOutputStream(dst)) {
-                // Transfer bytes from in to out
-                byte[] buf = new byte[1024];
-                int len;
-                while ((len = in.read(buf)) > 0) {
-                    out.write(buf, 0, len);
+        try (FileChannel in = new FileInputStream(src).getChannel()) {
+            copyFile(in, dst);
+        }
+    }
+
+    /**
+     * Copy contents of given open file
+     *
+     * @param in Source file channel, left open
+     * @param dst Destination file
+     * @throws IOException IO Error
+     */
+    public static void copyFile(FileChannel in, File dst) throws IOException {
+        try (FileChannel out = new FileOutputStream(dst).getChannel()) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                long count = in.transferTo(position, size - position, out);
+                if (count <= 0) {
+                    throw new IOException("Could not copy file.");
                 }
+                position += count;
             }
         }
     }
-}
\ No newline at end of file
+}
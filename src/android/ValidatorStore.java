@@ -0,0 +1,88 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Validator store
+ * Persisted ETag and Last-Modified values of finished downloads, used for conditional requests.
+ */
+class ValidatorStore {
+    private static final String PREFERENCES_NAME = "eu.intrasoft.cordova.filesdownloader.validators";
+
+    private final SharedPreferences preferences;
+
+    ValidatorStore(Context context) {
+        this.preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Get validators for given URL
+     *
+     * @param remoteUrl Remote URL
+     * @return JSONObject with optional "etag" and "lastModified" keys or null
+     */
+    public JSONObject get(String remoteUrl) {
+        String value = this.preferences.getString(remoteUrl, null);
+        if (null == value) {
+            return null;
+        }
+
+        try {
+            return new JSONObject(value);
+        } catch (JSONException e) {
+            this.remove(remoteUrl);
+            return null;
+        }
+    }
+
+    /**
+     * Store validators for given URL, nothing is stored when both are missing
+     *
+     * @param remoteUrl Remote URL
+     * @param etag ETag header value or null
+     * @param lastModified Last-Modified header value or null
+     */
+    public void put(String remoteUrl, String etag, String lastModified) {
+        if (null == etag && null == lastModified) {
+            this.remove(remoteUrl);
+            return;
+        }
+
+        try {
+            JSONObject obj = new JSONObject();
+            obj.put("etag", etag);
+            obj.put("lastModified", lastModified);
+
+            this.preferences.edit().putString(remoteUrl, obj.toString()).apply();
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void remove(String remoteUrl) {
+        this.preferences.edit().remove(remoteUrl).apply();
+    }
+}
@@ -0,0 +1,557 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * ZIP delta
+ * Updates an extracted archive in place, fetching only changed entries of the remote
+ * archive with range requests. Entries are compared by CRC and size of the local files.
+ */
+class ZipDelta {
+    interface Progress {
+        /**
+         * @param processed Bytes fetched
+         * @param total Bytes to fetch
+         * @param entries Entries updated
+         * @param entriesTotal Entries to update
+         */
+        void onProgress(long processed, long total, long entries, long entriesTotal);
+    }
+
+    private static final int END_HEADER = 0x06054b50;
+    private static final int END_HEADER_SIZE = 22;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+    private static final long ZIP64_MAGIC = 0xffffffffL;
+
+    /**
+     * Unchanged bytes between two changed entries fetched with the same request
+     * rather than with a new one
+     */
+    private static final long MERGE_GAP = 64 * 1024;
+
+    private final String remoteUrl;
+    private final File destinationDir;
+    private final File manifestFile;
+    private final int bufferSize;
+    private final Progress progress;
+    private volatile boolean cancelled = false;
+    private volatile HttpURLConnection connection;
+    private String validator;
+    private long processed;
+    private long total;
+    private long entries;
+    private long entriesTotal;
+
+    /**
+     * @param remoteUrl Remote archive URL
+     * @param destinationDir Directory the archive is extracted in
+     * @param manifestFile Manifest of the previous update, used to find removed entries
+     * @param bufferSize Read buffer size
+     * @param progress Progress listener
+     */
+    ZipDelta(String remoteUrl, File destinationDir, File manifestFile, int bufferSize, Progress progress) {
+        this.remoteUrl = remoteUrl;
+        this.destinationDir = destinationDir;
+        this.manifestFile = manifestFile;
+        this.bufferSize = bufferSize;
+        this.progress = progress;
+    }
+
+    /**
+     * Stop the update
+     */
+    public void cancel() {
+        this.cancelled = true;
+
+        HttpURLConnection connection = this.connection;
+        if (null != connection) {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Update extracted archive
+     *
+     * @return False if the server or the archive does not allow a delta update and the whole archive has to be fetched
+     * @throws DownloadException Download error
+     * @throws IOException IO error
+     */
+    public boolean run() throws DownloadException, IOException {
+        RemoteFileInfo remote = RemoteFileInfo.probe(this.remoteUrl);
+        long length = remote.getContentLength();
+        if (!remote.isAcceptRanges() || length < END_HEADER_SIZE) {
+            return false;
+        }
+
+        this.validator = remote.getValidator();
+
+        List<Entry> remoteEntries = this.readCentralDirectory(length);
+        if (null == remoteEntries || this.cancelled) {
+            return false;
+        }
+
+        String destinationPath = this.destinationDir.getCanonicalPath() + File.separator;
+        ZipManifest previous = ZipManifest.load(this.manifestFile);
+        ZipManifest manifest = new ZipManifest();
+        Set<File> dirs = new HashSet<File>();
+        List<Entry> changed = new ArrayList<Entry>();
+
+        for (Entry entry : remoteEntries) {
+            entry.target = ZipExtractor.getTarget(this.destinationDir, destinationPath, entry.name);
+
+            if (entry.isDirectory()) {
+                ZipExtractor.mkdirs(entry.target, dirs);
+                continue;
+            }
+
+            if (this.cancelled) {
+                return true;
+            }
+
+            if (previous.matches(entry.name, entry.target, entry.crc, entry.size)) {
+                manifest.put(entry.name, entry.crc, entry.size, entry.target.lastModified());
+            } else {
+                ZipExtractor.mkdirs(entry.target.getParentFile(), dirs);
+                changed.add(entry);
+            }
+        }
+
+        // Changed entries close to each other are fetched with one request
+        List<List<Entry>> groups = new ArrayList<List<Entry>>();
+        int i = 0;
+        while (i < changed.size()) {
+            int j = i + 1;
+            while (j < changed.size() && changed.get(j).offset - changed.get(j - 1).end <= MERGE_GAP) {
+                j++;
+            }
+
+            groups.add(changed.subList(i, j));
+            this.total += changed.get(j - 1).end - changed.get(i).offset;
+            i = j;
+        }
+
+        this.entriesTotal = changed.size();
+        this.progress.onProgress(0, this.total, 0, this.entriesTotal);
+
+        for (List<Entry> group : groups) {
+            if (this.cancelled) {
+                break;
+            }
+
+            this.fetch(group);
+        }
+
+        if (!this.cancelled) {
+            for (Entry entry : changed) {
+                manifest.put(entry.name, entry.crc, entry.size, entry.target.lastModified());
+            }
+
+            // Only once all changed entries are in place, so a failed update keeps the previous files
+            previous.deleteRemoved(manifest, this.destinationDir);
+            manifest.save(this.manifestFile);
+        }
+
+        return true;
+    }
+
+    /**
+     * Read central directory of the remote archive
+     *
+     * @param length Remote archive size
+     * @return Entries sorted by offset, or null if the archive is not supported
+     * @throws DownloadException Download error
+     * @throws IOException IO error
+     */
+    private List<Entry> readCentralDirectory(long length) throws DownloadException, IOException {
+        long tailStart = Math.max(0, length - END_HEADER_SIZE - MAX_COMMENT_SIZE);
+        byte[] tail = this.readRange(tailStart, length - 1);
+
+        int end = -1;
+        for (int i = tail.length - END_HEADER_SIZE; i >= 0; i--) {
+            if (getInt(tail, i) == END_HEADER) {
+                end = i;
+                break;
+            }
+        }
+
+        if (end < 0) {
+            throw new IOException("Invalid ZIP archive.");
+        }
+
+        int count = getShort(tail, end + 10);
+        long size = getUnsignedInt(tail, end + 12);
+        long offset = getUnsignedInt(tail, end + 16);
+
+        // ZIP64 archives are fetched whole
+        if (count == 0xffff || size == ZIP64_MAGIC || offset == ZIP64_MAGIC
+                || (end >= ZIP64_LOCATOR_SIZE && getInt(tail, end - ZIP64_LOCATOR_SIZE) == ZIP64_LOCATOR)) {
+            return null;
+        }
+
+        if (offset + size > length) {
+            throw new IOException("Invalid ZIP archive.");
+        }
+
+        byte[] directory;
+        int position;
+        if (offset >= tailStart) {
+            directory = tail;
+            position = (int) (offset - tailStart);
+        } else {
+            directory = this.readRange(offset, offset + size - 1);
+            position = 0;
+        }
+
+        List<Entry> list = new ArrayList<Entry>(count);
+        for (int i = 0; i < count; i++) {
+            if (position + CENTRAL_HEADER_SIZE > directory.length || getInt(directory, position) != CENTRAL_HEADER) {
+                throw new IOException("Invalid ZIP central directory.");
+            }
+
+            int flags = getShort(directory, position + 8);
+            int method = getShort(directory, position + 10);
+            int nameLength = getShort(directory, position + 28);
+            int extraLength = getShort(directory, position + 30);
+            int commentLength = getShort(directory, position + 32);
+
+            Entry entry = new Entry();
+            entry.method = method;
+            entry.crc = getUnsignedInt(directory, position + 16);
+            entry.compressedSize = getUnsignedInt(directory, position + 20);
+            entry.size = getUnsignedInt(directory, position + 24);
+            entry.offset = getUnsignedInt(directory, position + 42);
+            entry.name = new String(directory, position + CENTRAL_HEADER_SIZE, nameLength, "UTF-8");
+
+            // Encrypted entries, unknown compression methods and ZIP64 entries are not supported
+            if ((flags & 1) != 0 || (method != 0 && method != 8)
+                    || entry.compressedSize == ZIP64_MAGIC || entry.size == ZIP64_MAGIC || entry.offset == ZIP64_MAGIC) {
+                return null;
+            }
+
+            list.add(entry);
+            position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+
+        // Each entry spans from its local header to the next entry, which includes any data descriptor
+        Collections.sort(list, (a, b) -> Long.compare(a.offset, b.offset));
+        for (int i = 0; i < list.size(); i++) {
+            list.get(i).end = i + 1 < list.size() ? list.get(i + 1).offset : offset;
+        }
+
+        return list;
+    }
+
+    /**
+     * Fetch given entries with one range request and extract them
+     *
+     * @param group Entries sorted by offset
+     * @throws DownloadException Download error
+     * @throws IOException IO error
+     */
+    private void fetch(List<Entry> group) throws DownloadException, IOException {
+        long start = group.get(0).offset;
+        long end = group.get(group.size() - 1).end - 1;
+
+        HttpURLConnection connection = this.openRange(start, end);
+        try (InputStream in = new BufferedInputStream(connection.getInputStream(), this.bufferSize)) {
+            byte[] header = new byte[LOCAL_HEADER_SIZE];
+            byte[] input = new byte[this.bufferSize];
+            byte[] output = new byte[this.bufferSize];
+            long position = start;
+
+            for (Entry entry : group) {
+                if (this.cancelled) {
+                    return;
+                }
+
+                skip(in, entry.offset - position);
+                this.report(entry.offset - position, 0);
+
+                readFully(in, header, LOCAL_HEADER_SIZE);
+                if (getInt(header, 0) != LOCAL_HEADER) {
+                    throw new IOException("Invalid ZIP local header: " + entry.name);
+                }
+
+                long headerSize = LOCAL_HEADER_SIZE + getShort(header, 26) + getShort(header, 28);
+                skip(in, headerSize - LOCAL_HEADER_SIZE);
+                this.report(headerSize, 0);
+
+                this.extract(in, entry, input, output);
+
+                // Skip data descriptor
+                long read = headerSize + entry.compressedSize;
+                skip(in, entry.end - entry.offset - read);
+                this.report(entry.end - entry.offset - read, 1);
+
+                position = entry.end;
+            }
+        } finally {
+            connection.disconnect();
+            this.connection = null;
+        }
+    }
+
+    /**
+     * Inflate data of one entry into its target file
+     *
+     * @param in Stream positioned at entry data
+     * @param entry Entry
+     * @param input Input buffer
+     * @param output Output buffer
+     * @throws IOException IO error
+     */
+    private void extract(InputStream in, Entry entry, byte[] input, byte[] output) throws IOException {
+        // Target file is replaced only after the CRC check
+        File temporaryFile = new File(entry.target.getPath() + ".download");
+
+        try {
+            this.inflate(in, entry, temporaryFile, input, output);
+
+            if (!this.cancelled && !temporaryFile.renameTo(entry.target)) {
+                throw new IOException("Could not save ZIP entry: " + entry.name);
+            }
+        } finally {
+            temporaryFile.delete();
+        }
+    }
+
+    /**
+     * Inflate data of one entry into given file and check its CRC
+     *
+     * @param in Stream positioned at entry data
+     * @param entry Entry
+     * @param file Output file
+     * @param input Input buffer
+     * @param output Output buffer
+     * @throws IOException IO error
+     */
+    private void inflate(InputStream in, Entry entry, File file, byte[] input, byte[] output) throws IOException {
+        CRC32 crc = new CRC32();
+        long remaining = entry.compressedSize;
+
+        try (OutputStream out = new FileOutputStream(file)) {
+            if (entry.method == 0) {
+                while (remaining > 0 && !this.cancelled) {
+                    int count = in.read(input, 0, (int) Math.min(input.length, remaining));
+                    if (count == -1) {
+                        throw new EOFException("Unexpected end of ZIP entry: " + entry.name);
+                    }
+
+                    out.write(input, 0, count);
+                    crc.update(input, 0, count);
+                    remaining -= count;
+                    this.report(count, 0);
+                }
+            } else {
+                Inflater inflater = new Inflater(true);
+                boolean dummy = false;
+
+                try {
+                    while (!inflater.finished() && !this.cancelled) {
+                        if (inflater.needsInput()) {
+                            if (remaining > 0) {
+                                int count = in.read(input, 0, (int) Math.min(input.length, remaining));
+                                if (count == -1) {
+                                    throw new EOFException("Unexpected end of ZIP entry: " + entry.name);
+                                }
+
+                                inflater.setInput(input, 0, count);
+                                remaining -= count;
+                                this.report(count, 0);
+                            } else if (!dummy) {
+                                // Raw inflate may need one extra byte to finish
+                                inflater.setInput(new byte[1], 0, 1);
+                                dummy = true;
+                            } else {
+                                throw new EOFException("Unexpected end of ZIP entry: " + entry.name);
+                            }
+                        }
+
+                        int count = inflater.inflate(output);
+                        if (count > 0) {
+                            out.write(output, 0, count);
+                            crc.update(output, 0, count);
+                        } else if (inflater.needsDictionary()) {
+                            throw new IOException("Invalid ZIP entry: " + entry.name);
+                        }
+                    }
+                } catch (DataFormatException e) {
+                    throw new IOException("Invalid ZIP entry: " + entry.name);
+                } finally {
+                    inflater.end();
+                }
+
+                // Compressed data may be followed by padding
+                skip(in, remaining);
+                this.report(remaining, 0);
+            }
+        }
+
+        if (!this.cancelled && crc.getValue() != entry.crc) {
+            throw new IOException("CRC mismatch of ZIP entry: " + entry.name);
+        }
+    }
+
+    /**
+     * Read given range of the remote archive into memory
+     *
+     * @param start First byte
+     * @param end Last byte (inclusive)
+     * @return Range content
+     * @throws DownloadException Download error
+     * @throws IOException IO error
+     */
+    private byte[] readRange(long start, long end) throws DownloadException, IOException {
+        if (end - start + 1 > Integer.MAX_VALUE) {
+            throw new IOException("ZIP central directory is too large.");
+        }
+
+        HttpURLConnection connection = this.openRange(start, end);
+        try (InputStream in = connection.getInputStream()) {
+            byte[] data = new byte[(int) (end - start + 1)];
+            readFully(in, data, data.length);
+
+            return data;
+        } finally {
+            connection.disconnect();
+            this.connection = null;
+        }
+    }
+
+    /**
+     * Open range request, conditional on the validator of the probed archive
+     *
+     * @param start First byte
+     * @param end Last byte (inclusive)
+     * @return Connection with partial content
+     * @throws DownloadException Range was not returned
+     * @throws IOException IO error
+     */
+    private HttpURLConnection openRange(long start, long end) throws DownloadException, IOException {
+        HttpURLConnection connection = Utils.openConnection(this.remoteUrl);
+        connection.setRequestProperty("Range", "bytes=" + start + "-" + end);
+        if (null != this.validator) {
+            connection.setRequestProperty("If-Range", this.validator);
+        }
+
+        this.connection = connection;
+        if (this.cancelled) {
+            connection.disconnect();
+            throw new IOException("Download cancelled.");
+        }
+
+        int responseCode = connection.getResponseCode();
+        if (responseCode != HttpURLConnection.HTTP_PARTIAL
+                || RemoteFileInfo.getRangeStart(connection.getHeaderField("Content-Range")) != start) {
+            connection.disconnect();
+            // Full body means the remote archive has changed since the probe
+            throw new DownloadException(106, "Server did not return requested range (HTTP " + responseCode + ").");
+        }
+
+        return connection;
+    }
+
+    private void report(long bytes, int entries) {
+        this.processed += bytes;
+        this.entries += entries;
+        this.progress.onProgress(this.processed, this.total, this.entries, this.entriesTotal);
+    }
+
+    private static void readFully(InputStream in, byte[] buffer, int length) throws IOException {
+        int position = 0;
+        while (position < length) {
+            int count = in.read(buffer, position, length - position);
+            if (count == -1) {
+                throw new EOFException("Unexpected end of ZIP archive.");
+            }
+            position += count;
+        }
+    }
+
+    private static void skip(InputStream in, long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() == -1) {
+                    throw new EOFException("Unexpected end of ZIP archive.");
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private static int getShort(byte[] data, int offset) {
+        return (data[offset] & 0xff) | ((data[offset + 1] & 0xff) << 8);
+    }
+
+    private static int getInt(byte[] data, int offset) {
+        return (data[offset] & 0xff)
+                | ((data[offset + 1] & 0xff) << 8)
+                | ((data[offset + 2] & 0xff) << 16)
+                | ((data[offset + 3] & 0xff) << 24);
+    }
+
+    private static long getUnsignedInt(byte[] data, int offset) {
+        return getInt(data, offset) & 0xffffffffL;
+    }
+
+    /**
+     * Central directory entry
+     */
+    private static class Entry {
+        String name;
+        int method;
+        long crc;
+        long compressedSize;
+        long size;
+        long offset;
+        long end;
+        File target;
+
+        boolean isDirectory() {
+            return this.name.endsWith("/");
+        }
+    }
+}
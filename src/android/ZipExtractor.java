@@ -0,0 +1,327 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * ZIP extractor
+ * Reads entries from the central directory and extracts them in parallel.
+ * With a manifest, entries already in place are skipped.
+ */
+class ZipExtractor {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final int parallelism;
+    private final AtomicLong processed = new AtomicLong();
+    private int percentage = -1;
+    private long total;
+    private final AtomicLong entries = new AtomicLong();
+    private final AtomicLong bytesSkipped = new AtomicLong();
+    private final AtomicLong entriesSkipped = new AtomicLong();
+    private long entriesTotal;
+    private TransferStats stats;
+    private Utils.ExtractZipProgress progress;
+    private ZipManifest manifest;
+
+    /**
+     * @param parallelism Number of threads, 1 extracts on the calling thread
+     */
+    ZipExtractor(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Get default number of threads for this device
+     *
+     * @return Number of threads
+     */
+    static int getDefaultParallelism() {
+        return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Extract given archive
+     *
+     * @param zipFile Archive file
+     * @param destinationDir Destination directory
+     * @param stats Stats to update, may be null
+     * @param progress Progress listener, may be null
+     * @throws IOException IO Error
+     */
+    public void extract(final File zipFile, File destinationDir, TransferStats stats, Utils.ExtractZipProgress progress) throws IOException {
+        this.extract(zipFile, destinationDir, null, stats, progress);
+    }
+
+    /**
+     * Extract given archive, skipping entries whose files already match CRC and size
+     *
+     * @param zipFile Archive file
+     * @param destinationDir Destination directory
+     * @param manifestFile Manifest of previous extraction, updated when done. Null extracts everything
+     * @param stats Stats to update, may be null
+     * @param progress Progress listener, may be null
+     * @throws IOException IO Error
+     */
+    public void extract(final File zipFile, File destinationDir, File manifestFile, TransferStats stats, Utils.ExtractZipProgress progress) throws IOException {
+        this.stats = stats;
+        this.progress = progress;
+        this.manifest = null != manifestFile ? ZipManifest.load(manifestFile) : null;
+        this.processed.set(0);
+        this.entries.set(0);
+        this.bytesSkipped.set(0);
+        this.entriesSkipped.set(0);
+        this.percentage = -1;
+        this.total = 0;
+
+        String destinationPath = destinationDir.getCanonicalPath() + File.separator;
+        List<List<Task>> partitions = new ArrayList<List<Task>>(this.parallelism);
+        List<Task> tasks = new ArrayList<Task>();
+        Set<File> dirs = new HashSet<File>();
+
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                File target = getTarget(destinationDir, destinationPath, entry.getName());
+
+                if (entry.isDirectory()) {
+                    mkdirs(target, dirs);
+                    continue;
+                }
+
+                mkdirs(target.getParentFile(), dirs);
+                tasks.add(new Task(entry.getName(), target, Math.max(0, entry.getSize()), entry.getCrc()));
+                this.total += Math.max(0, entry.getSize());
+            }
+        }
+
+        this.entriesTotal = tasks.size();
+
+        // Largest entries first, spread over the workers
+        Collections.sort(tasks, new Comparator<Task>() {
+            @Override
+            public int compare(Task a, Task b) {
+                return Long.compare(b.size, a.size);
+            }
+        });
+
+        int workers = Math.min(this.parallelism, Math.max(1, tasks.size()));
+        for (int i = 0; i < workers; i++) {
+            partitions.add(new ArrayList<Task>());
+        }
+        for (int i = 0; i < tasks.size(); i++) {
+            partitions.get(i % workers).add(tasks.get(i));
+        }
+
+        if (workers == 1) {
+            this.extract(zipFile, partitions.get(0));
+            this.report();
+            this.saveManifest(manifestFile, tasks);
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>(workers);
+            for (final List<Task> partition : partitions) {
+                futures.add(executor.submit(() -> {
+                    extract(zipFile, partition);
+                    return null;
+                }));
+            }
+
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Extraction interrupted.");
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        this.report();
+        this.saveManifest(manifestFile, tasks);
+    }
+
+    /**
+     * Save manifest of extracted entries
+     *
+     * @param manifestFile Manifest file or null
+     * @param tasks Extracted entries
+     */
+    private void saveManifest(File manifestFile, List<Task> tasks) {
+        if (null == manifestFile) {
+            return;
+        }
+
+        ZipManifest manifest = new ZipManifest();
+        for (Task task : tasks) {
+            manifest.put(task.name, task.crc, task.size, task.modified);
+        }
+
+        try {
+            manifest.save(manifestFile);
+        } catch (IOException e) {
+            // Next extraction compares CRC of the files instead
+            System.err.println("Exception: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Extract given entries. Every worker reads the archive through its own handle.
+     *
+     * @param zipFile Archive file
+     * @param tasks Entries to extract
+     * @throws IOException IO Error
+     */
+    private void extract(File zipFile, List<Task> tasks) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int count;
+
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            for (Task task : tasks) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new IOException("Extraction interrupted.");
+                }
+
+                if (null != this.manifest && this.manifest.matches(task.name, task.target, task.crc, task.size)) {
+                    this.bytesSkipped.addAndGet(task.size);
+                    this.entriesSkipped.incrementAndGet();
+                    this.processed.addAndGet(task.size);
+                } else {
+                    try (InputStream in = zip.getInputStream(zip.getEntry(task.name));
+                         OutputStream out = new FileOutputStream(task.target)) {
+                        while ((count = in.read(buffer)) != -1) {
+                            out.write(buffer, 0, count);
+                            this.processed.addAndGet(count);
+                        }
+                    }
+                }
+
+                task.modified = task.target.lastModified();
+                this.entries.incrementAndGet();
+                this.report();
+            }
+        }
+    }
+
+    /**
+     * Update stats and report progress if percentage has changed
+     */
+    private synchronized void report() {
+        if (null != this.stats) {
+            this.stats.update(this.processed.get(), this.total);
+            this.stats.updateEntries(this.entries.get(), this.entriesTotal);
+            this.stats.updateSkipped(this.bytesSkipped.get(), this.entriesSkipped.get());
+        }
+
+        if (null == this.progress) {
+            return;
+        }
+
+        int current = this.total > 0
+                ? (int) Math.min(100, Math.ceil((double) this.processed.get() / (double) this.total * 100))
+                : 100;
+
+        if (current > this.percentage) {
+            this.percentage = current;
+            this.progress.Progress(current);
+        }
+    }
+
+    /**
+     * Get target file for given entry
+     *
+     * @param destinationDir Destination directory
+     * @param destinationPath Canonical destination path with trailing separator
+     * @param name Entry name
+     * @return File
+     * @throws IOException If the entry resolves outside of the destination directory
+     */
+    static File getTarget(File destinationDir, String destinationPath, String name) throws IOException {
+        File target = new File(destinationDir, name);
+
+        if (!target.getCanonicalPath().startsWith(destinationPath)) {
+            throw new IOException("Entry is outside of the target directory: " + name);
+        }
+
+        return target;
+    }
+
+    /**
+     * Create directory if it does not exist
+     *
+     * @param dir Directory
+     * @param dirs Directories already created
+     * @throws IOException IO Error
+     */
+    static void mkdirs(File dir, Set<File> dirs) throws IOException {
+        if (!dirs.add(dir)) {
+            return;
+        }
+
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Could not create directory: " + dir.getPath());
+        }
+    }
+
+    /**
+     * Single entry to extract
+     */
+    private static class Task {
+        final String name;
+        final File target;
+        final long size;
+        final long crc;
+        long modified;
+
+        Task(String name, File target, long size, long crc) {
+            this.name = name;
+            this.target = target;
+            this.size = size;
+            this.crc = crc;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+ */
+
+package eu.intrasoft.cordova.filesdownloader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * ZIP manifest
+ * CRC, size and file modification time of every entry extracted from one archive,
+ * stored next to the destination file.
+ */
+class ZipManifest {
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+    /**
+     * Get manifest file for given archive
+     *
+     * @param destinationFile Archive destination file
+     * @return Manifest file
+     */
+    static File getFile(File destinationFile) {
+        return new File(destinationFile.getPath() + ".manifest");
+    }
+
+    /**
+     * Load manifest from given file
+     *
+     * @param file Manifest file
+     * @return Manifest, empty if the file is missing or invalid
+     */
+    static ZipManifest load(File file) {
+        ZipManifest manifest = new ZipManifest();
+        if (!file.isFile()) {
+            return manifest;
+        }
+
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] data = new byte[(int) file.length()];
+            int position = 0;
+            int count;
+            while (position < data.length && (count = in.read(data, position, data.length - position)) != -1) {
+                position += count;
+            }
+
+            JSONObject obj = new JSONObject(new String(data, 0, position, "UTF-8")).getJSONObject("entries");
+            Iterator<String> names = obj.keys();
+            while (names.hasNext()) {
+                String name = names.next();
+                JSONArray entry = obj.getJSONArray(name);
+                manifest.put(name, entry.getLong(0), entry.getLong(1), entry.optLong(2, 0));
+            }
+        } catch (IOException | JSONException e) {
+            System.err.println("Exception: " + e.getMessage());
+            manifest.entries.clear();
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Save manifest to given file
+     *
+     * @param file Manifest file
+     * @throws IOException IO error
+     */
+    public void save(File file) throws IOException {
+        File temporaryFile = new File(file.getPath() + ".tmp");
+
+        try {
+            JSONObject obj = new JSONObject();
+            for (Map.Entry<String, Entry> entry : this.entries.entrySet()) {
+                JSONArray values = new JSONArray();
+                values.put(entry.getValue().crc);
+                values.put(entry.getValue().size);
+                values.put(entry.getValue().modified);
+                obj.put(entry.getKey(), values);
+            }
+
+            JSONObject manifest = new JSONObject();
+            manifest.put("entries", obj);
+
+            try (OutputStream out = new FileOutputStream(temporaryFile)) {
+                out.write(manifest.toString().getBytes("UTF-8"));
+            }
+        } catch (JSONException e) {
+            throw new IOException(e.getMessage());
+        }
+
+        if (!temporaryFile.renameTo(file)) {
+            temporaryFile.delete();
+            throw new IOException("Could not save manifest.");
+        }
+    }
+
+    /**
+     * Add entry
+     *
+     * @param name Entry name
+     * @param crc Entry CRC-32
+     * @param size Entry size
+     * @param modified Modification time of the extracted file, 0 if unknown
+     */
+    public void put(String name, long crc, long size, long modified) {
+        this.entries.put(name, new Entry(crc, size, modified));
+    }
+
+    /**
+     * Check if given file already holds given entry. Files not modified since they were
+     * recorded in this manifest are trusted, other files of the same size are read to compare CRC.
+     *
+     * @param name Entry name
+     * @param target Extracted file
+     * @param crc Entry CRC-32
+     * @param size Entry size
+     * @return True if the entry does not have to be extracted
+     * @throws IOException IO error
+     */
+    public boolean matches(String name, File target, long crc, long size) throws IOException {
+        if (!target.isFile() || target.length() != size) {
+            return false;
+        }
+
+        Entry entry = this.entries.get(name);
+        if (null != entry && entry.crc == crc && entry.size == size
+                && entry.modified != 0 && entry.modified == target.lastModified()) {
+            return true;
+        }
+
+        return getCrc(target) == crc;
+    }
+
+    /**
+     * Delete extracted files of entries which are not in given manifest
+     *
+     * @param current Manifest of the new archive
+     * @param destinationDir Directory the archive is extracted in
+     * @throws IOException IO error
+     */
+    public void deleteRemoved(ZipManifest current, File destinationDir) throws IOException {
+        String destinationPath = destinationDir.getCanonicalPath() + File.separator;
+
+        for (String name : this.entries.keySet()) {
+            if (null == current.get(name)) {
+                ZipExtractor.getTarget(destinationDir, destinationPath, name).delete();
+            }
+        }
+    }
+
+    public Entry get(String name) {
+        return this.entries.get(name);
+    }
+
+    /**
+     * Get CRC-32 of given file
+     *
+     * @param file File
+     * @return CRC-32
+     * @throws IOException IO error
+     */
+    static long getCrc(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        int count;
+
+        try (InputStream in = new FileInputStream(file)) {
+            while ((count = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, count);
+            }
+        }
+
+        return crc.getValue();
+    }
+
+    /**
+     * Manifest entry
+     */
+    static class Entry {
+        final long crc;
+        final long size;
+        final long modified;
+
+        Entry(long crc, long size, long modified) {
+            this.crc = crc;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+}
@@ -45,6 +45,41 @@ FilesDownloader.prototype.download = function (remoteUrl, destinationFile, optio
     cordova.exec(successCallback, errorCallback, 'FilesDownloader', 'download', [options]);
 };
 
+/**
+ * Start downloads for many remote files with one call
+ *
+ * @param {Array} files List of {remoteUrl, destinationFile|destinationFileUrl, title, extract}
+ * @param {object} options Defaults applied to every file
+ * @param successCallback
+ * @param errorCallback
+ */
+FilesDownloader.prototype.downloadBatch = function (files, options, successCallback, errorCallback) {
+    if (!options) {
+        options = {};
+    }
+
+    var items = files.map(function (file) {
+        var item = {};
+
+        Object.keys(options).forEach(function (key) {
+            item[key] = options[key];
+        });
+        Object.keys(file).forEach(function (key) {
+            if (key !== 'destinationFile') {
+                item[key] = file[key];
+            }
+        });
+
+        if (file.destinationFile) {
+            item.destinationFileUrl = file.destinationFile.toURL();
+        }
+
+        return item;
+    });
+
+    cordova.exec(successCallback, errorCallback, 'FilesDownloader', 'downloadBatch', [items]);
+};
+
 /**
  * Cancel download for given remote file
  *
@@ -60,6 +95,99 @@ FilesDownloader.prototype.cancel = function (remoteUrl, successCallback, errorCa
     cordova.exec(successCallback, errorCallback, 'FilesDownloader', 'cancel', [options]);
 };
 
+/**
+ * Change priority of queued download for given remote file
+ *
+ * @param {string} remoteUrl
+ * @param {number} priority
+ * @param successCallback
+ * @param errorCallback
+ */
+FilesDownloader.prototype.setPriority = function (remoteUrl, priority, successCallback, errorCallback) {
+    var options = {};
+
+    options.remoteUrl = remoteUrl;
+    options.priority = priority;
+
+    cordova.exec(successCallback, errorCallback, 'FilesDownloader', 'setPriority', [options]);
+};
+
+/**
+ * Change plugin settings
+ *
+ * @param {object} options
+ * @param successCallback
+ * @param errorCallback
+ */
+FilesDownloader.prototype.configure = function (options, successCallback, errorCallback) {
+    cordova.exec(successCallback, errorCallback, 'FilesDownloader', 'configure', [options || {}]);
+};
+
+/**
+ * Get contents of the local content cache
+ *
+ * @param successCallback
+ * @param errorCallback
+ */
+FilesDownloader.prototype.getCache = function (successCallback, errorCallback) {
+    cordova.exec(successCallback, errorCallback, 'FilesDownloader', 'getCache', [{}]);
+};
+
+/**
+ * Remove cached copy of given remote file, or the whole cache when no URL is given
+ *
+ * @param {string} remoteUrl
+ * @param successCallback
+ * @param errorCallback
+ */
+FilesDownloader.prototype.purgeCache = function (remoteUrl, successCallback, errorCallback) {
+    var options = {};
+
+    if (remoteUrl) {
+        options.remoteUrl = remoteUrl;
+    }
+
+    cordova.exec(successCallback, errorCallback, 'FilesDownloader', 'purgeCache', [options]);
+};
+
+/**
+ * Get lifecycle timing of active and recent downloads, optionally only of given remote file
+ *
+ * @param {string} remoteUrl
+ * @param successCallback
+ * @param errorCallback
+ */
+FilesDownloader.prototype.getMetrics = function (remoteUrl, successCallback, errorCallback) {
+    var options = {};
+
+    if (remoteUrl) {
+        options.remoteUrl = remoteUrl;
+    }
+
+    cordova.exec(successCallback, errorCallback, 'FilesDownloader', 'getMetrics', [options]);
+};
+
+/**
+ * Receive one progress snapshot per tick for all active downloads
+ *
+ * @param {object} options
+ * @param successCallback
+ * @param errorCallback
+ */
+FilesDownloader.prototype.subscribeProgress = function (options, successCallback, errorCallback) {
+    cordova.exec(successCallback, errorCallback, 'FilesDownloader', 'subscribeProgress', [options || {}]);
+};
+
+/**
+ * Stop progress snapshots
+ *
+ * @param successCallback
+ * @param errorCallback
+ */
+FilesDownloader.prototype.unsubscribeProgress = function (successCallback, errorCallback) {
+    cordova.exec(successCallback, errorCallback, 'FilesDownloader', 'unsubscribeProgress', [{}]);
+};
+
 /**
  *
  * @returns {FilesDownloader}